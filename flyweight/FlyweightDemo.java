@@ -1,62 +1,339 @@
+import java.io.*;
+import java.lang.ref.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 // Flyweight interface
 interface CharacterFlyweight {
     void display(int row, int column, String font, int size, String color);
+    
+    // Appends the same line display() would print, without allocating
+    void display(StringBuilder out, int row, int column, String font, int size, String color);
+    
+    int getCodePoint();
 }
 
 // Concrete flyweight - stores intrinsic state
 class Character implements CharacterFlyweight {
-    private final char character; // Intrinsic state - shared
+    private final int codePoint; // Intrinsic state - shared
+    private final String glyph;  // Pre-rendered form of the code point
     
     public Character(char character) {
-        this.character = character;
-        System.out.println("🔤 Creating flyweight for character: '" + character + "'");
+        this((int) character);
+    }
+    
+    public Character(int codePoint) {
+        this.codePoint = codePoint;
+        this.glyph = new String(java.lang.Character.toChars(codePoint));
     }
     
     @Override
     public void display(int row, int column, String font, int size, String color) {
         // Extrinsic state is passed as parameters
-        System.out.println("📝 Displaying '" + character + "' at (" + row + "," + column + 
+        System.out.println("📝 Displaying '" + glyph + "' at (" + row + "," + column + 
                           ") font:" + font + " size:" + size + " color:" + color);
     }
     
+    @Override
+    public void display(StringBuilder out, int row, int column, String font, int size, String color) {
+        out.append("📝 Displaying '").append(glyph).append("' at (").append(row).append(',').append(column)
+           .append(") font:").append(font).append(" size:").append(size).append(" color:").append(color)
+           .append('\n');
+    }
+    
+    // Only meaningful for BMP characters - use getCodePoint() for the full range
     public char getCharacter() {
-        return character;
+        return (char) codePoint;
+    }
+    
+    @Override
+    public int getCodePoint() {
+        return codePoint;
+    }
+    
+    public String getGlyph() {
+        return glyph;
+    }
+}
+
+// How a flyweight pool holds on to the flyweights it hands out
+enum PoolMode {
+    STRONG, // Pool keeps every flyweight alive for the life of the JVM
+    WEAK,   // Collectable as soon as nothing outside the pool references it
+    SOFT;   // Collectable once unreferenced and the JVM runs short of memory
+    
+    // What the pool stores in a slot for this mode: the flyweight itself or a reference to it
+    <T> Object wrap(T flyweight, Object key, ReferenceQueue<? super T> queue) {
+        switch (this) {
+            case WEAK: return new WeakPoolEntry<>(flyweight, key, queue);
+            case SOFT: return new SoftPoolEntry<>(flyweight, key, queue);
+            default: return flyweight;
+        }
+    }
+    
+    // The mode a pool slot was wrapped in
+    static PoolMode of(Object entry) {
+        if (entry instanceof WeakPoolEntry) {
+            return WEAK;
+        }
+        return entry instanceof SoftPoolEntry ? SOFT : STRONG;
+    }
+    
+    // The flyweight held by a pool slot, or null if the slot is empty or was collected
+    @SuppressWarnings("unchecked")
+    static <T> T unwrap(Object entry) {
+        if (entry instanceof Reference) {
+            return ((Reference<T>) entry).get();
+        }
+        return (T) entry;
+    }
+}
+
+// Reference-mode pool slot that remembers its key, so the pool can expunge it once collected
+interface PoolEntry {
+    Object getKey();
+}
+
+class WeakPoolEntry<T> extends WeakReference<T> implements PoolEntry {
+    private final Object key;
+    
+    WeakPoolEntry(T referent, Object key, ReferenceQueue<? super T> queue) {
+        super(referent, queue);
+        this.key = key;
+    }
+    
+    @Override
+    public Object getKey() { return key; }
+}
+
+class SoftPoolEntry<T> extends SoftReference<T> implements PoolEntry {
+    private final Object key;
+    
+    SoftPoolEntry(T referent, Object key, ReferenceQueue<? super T> queue) {
+        super(referent, queue);
+        this.key = key;
     }
+    
+    @Override
+    public Object getKey() { return key; }
 }
 
-// Flyweight factory
+// Flyweight factory - safe to share between rendering threads
 class CharacterFactory {
-    private static final Map<java.lang.Character, CharacterFlyweight> flyweights = new HashMap<>();
-    private static int creationCount = 0;
+    // Fast path: one slot per BMP code unit, so a lookup is a single volatile
+    // array read - no boxing, no hashing, no locking. Slots hold the flyweight
+    // itself in STRONG mode, or a PoolEntry reference in WEAK/SOFT mode
+    private static final AtomicReferenceArray<Object> bmpFlyweights = 
+        new AtomicReferenceArray<>(java.lang.Character.MAX_VALUE + 1);
+    // Fallback for supplementary code points (emoji, historic scripts, ...)
+    private static final ConcurrentHashMap<Integer, Object> supplementaryFlyweights = 
+        new ConcurrentHashMap<>();
+    private static final ReferenceQueue<CharacterFlyweight> collected = new ReferenceQueue<>();
+    private static volatile PoolMode poolMode = PoolMode.STRONG;
+    // One bit per code point ever evicted, allocated once a reference mode is enabled
+    private static volatile AtomicLongArray evictedCodePoints;
+    
+    private static final AtomicInteger creationCount = new AtomicInteger();
+    private static final AtomicInteger flyweightCount = new AtomicInteger();
+    private static final AtomicInteger evictedCount = new AtomicInteger();
+    private static final AtomicInteger recreatedCount = new AtomicInteger();
+    private static final AtomicInteger lostRaces = new AtomicInteger();
     
     public static CharacterFlyweight getCharacter(char character) {
-        CharacterFlyweight flyweight = flyweights.get(character);
+        Object entry = bmpFlyweights.get(character);
+        
+        if (entry instanceof CharacterFlyweight) {
+            return (CharacterFlyweight) entry;
+        }
+        
+        return resolveBmp(character, entry);
+    }
+    
+    public static CharacterFlyweight getCharacter(int codePoint) {
+        if (codePoint >= 0 && codePoint <= java.lang.Character.MAX_VALUE) {
+            return getCharacter((char) codePoint);
+        }
+        if (!java.lang.Character.isValidCodePoint(codePoint)) {
+            throw new IllegalArgumentException("Invalid code point: " + codePoint);
+        }
         
-        if (flyweight == null) {
-            flyweight = new Character(character);
-            flyweights.put(character, flyweight);
-            creationCount++;
+        Object entry = supplementaryFlyweights.get(codePoint);
+        
+        while (true) {
+            CharacterFlyweight flyweight = PoolMode.unwrap(entry);
+            if (flyweight != null) {
+                return flyweight;
+            }
+            
+            CharacterFlyweight candidate = new Character(codePoint);
+            Object slot = poolMode.wrap(candidate, codePoint, collected);
+            boolean published = entry == null 
+                ? supplementaryFlyweights.putIfAbsent(codePoint, slot) == null 
+                : supplementaryFlyweights.replace(codePoint, entry, slot);
+            if (published) {
+                reconcileMode(codePoint);
+                recordCreation(candidate, entry != null);
+                return candidate;
+            }
+            
+            lostRaces.incrementAndGet();
+            entry = supplementaryFlyweights.get(codePoint);
+        }
+    }
+    
+    // Several threads may miss on the same slot at once; only the one whose CAS
+    // publishes its candidate counts as a creation, the others adopt the winner.
+    // A slot still holding a collected reference is replaced the same way
+    private static CharacterFlyweight resolveBmp(char character, Object entry) {
+        while (true) {
+            CharacterFlyweight flyweight = PoolMode.unwrap(entry);
+            if (flyweight != null) {
+                return flyweight;
+            }
+            
+            CharacterFlyweight candidate = new Character(character);
+            if (bmpFlyweights.compareAndSet(character, entry, poolMode.wrap(candidate, (int) character, collected))) {
+                reconcileMode(character);
+                recordCreation(candidate, entry != null);
+                return candidate;
+            }
+            
+            lostRaces.incrementAndGet();
+            entry = bmpFlyweights.get(character);
+        }
+    }
+    
+    // Creation does not take the setPoolMode lock, so a slot can be published in the old mode
+    // after the conversion scan has passed it (the scan's CAS on that slot then fails). Re-check
+    // after publishing and re-wrap until the slot matches the mode in force
+    private static void reconcileMode(int codePoint) {
+        if (codePoint > java.lang.Character.MAX_VALUE) {
+            supplementaryFlyweights.computeIfPresent(codePoint, (key, entry) -> {
+                CharacterFlyweight flyweight = PoolMode.unwrap(entry);
+                PoolMode mode = poolMode;
+                return flyweight == null || PoolMode.of(entry) == mode ? entry : mode.wrap(flyweight, key, collected);
+            });
+            return;
+        }
+        while (true) {
+            PoolMode mode = poolMode;
+            Object entry = bmpFlyweights.get(codePoint);
+            CharacterFlyweight flyweight = PoolMode.unwrap(entry);
+            if (flyweight == null || PoolMode.of(entry) == mode) {
+                return;
+            }
+            bmpFlyweights.compareAndSet(codePoint, entry, mode.wrap(flyweight, codePoint, collected));
+        }
+    }
+    
+    private static void recordCreation(CharacterFlyweight flyweight, boolean replacedCollected) {
+        expungeCollected();
+        creationCount.incrementAndGet();
+        flyweightCount.incrementAndGet();
+        if (replacedCollected || wasEvicted(flyweight.getCodePoint())) {
+            recreatedCount.incrementAndGet();
+        }
+        System.out.println("🔤 Creating flyweight for character: '" + 
+                          ((Character) flyweight).getGlyph() + "'");
+    }
+    
+    // Clears the slots of flyweights the GC has collected and counts them as evicted
+    private static void expungeCollected() {
+        Reference<? extends CharacterFlyweight> reference;
+        while ((reference = collected.poll()) != null) {
+            int codePoint = (Integer) ((PoolEntry) reference).getKey();
+            if (codePoint <= java.lang.Character.MAX_VALUE) {
+                bmpFlyweights.compareAndSet(codePoint, reference, null);
+            } else {
+                supplementaryFlyweights.remove(codePoint, reference);
+            }
+            evictedCount.incrementAndGet();
+            flyweightCount.decrementAndGet();
+            
+            AtomicLongArray evicted = evictedCodePoints;
+            if (evicted != null) {
+                evicted.getAndAccumulate(codePoint >>> 6, 1L << (codePoint & 63), (bits, mask) -> bits | mask);
+            }
         }
+    }
+    
+    private static boolean wasEvicted(int codePoint) {
+        AtomicLongArray evicted = evictedCodePoints;
+        return evicted != null && (evicted.get(codePoint >>> 6) & (1L << (codePoint & 63))) != 0;
+    }
+    
+    // Switches how the pool holds flyweights, converting the ones already pooled. Lookups and
+    // creations keep running meanwhile; a creation that races the switch fixes up its own slot
+    public static synchronized void setPoolMode(PoolMode mode) {
+        if (mode != PoolMode.STRONG && evictedCodePoints == null) {
+            evictedCodePoints = new AtomicLongArray((java.lang.Character.MAX_CODE_POINT + 1) / 64);
+        }
+        poolMode = mode;
         
-        return flyweight;
+        for (int i = 0; i < bmpFlyweights.length(); i++) {
+            Object entry = bmpFlyweights.get(i);
+            CharacterFlyweight flyweight = PoolMode.unwrap(entry);
+            if (flyweight != null) {
+                bmpFlyweights.compareAndSet(i, entry, mode.wrap(flyweight, i, collected));
+            }
+        }
+        supplementaryFlyweights.replaceAll((codePoint, entry) -> {
+            CharacterFlyweight flyweight = PoolMode.unwrap(entry);
+            return flyweight == null ? entry : mode.wrap(flyweight, codePoint, collected);
+        });
+    }
+    
+    public static PoolMode getPoolMode() {
+        return poolMode;
     }
     
     public static int getCreationCount() {
-        return creationCount;
+        return creationCount.get();
     }
     
     public static int getFlyweightCount() {
-        return flyweights.size();
+        expungeCollected();
+        return flyweightCount.get();
+    }
+    
+    public static int getEvictedCount() {
+        expungeCollected();
+        return evictedCount.get();
+    }
+    
+    public static int getRecreatedCount() {
+        return recreatedCount.get();
+    }
+    
+    // The pool's backing structures, for heap measurement
+    static Object poolRoots() {
+        return new Object[] { bmpFlyweights, supplementaryFlyweights };
+    }
+    
+    public static int getLostRaceCount() {
+        return lostRaces.get();
     }
     
     public static void showStatistics() {
+        expungeCollected();
+        int recreated = recreatedCount.get();
         System.out.println("📊 Flyweight Statistics:");
-        System.out.println("   Unique flyweights created: " + creationCount);
-        System.out.println("   Flyweights in pool: " + flyweights.size());
+        System.out.println("   Unique flyweights created: " + creationCount.get());
+        System.out.println("   Flyweights in pool: " + flyweightCount.get());
+        System.out.println("   Discarded duplicate candidates: " + lostRaces.get());
+        if (poolMode != PoolMode.STRONG || evictedCount.get() > 0) {
+            System.out.println("   Pool mode: " + poolMode);
+            System.out.println("   Evicted after collection: " + evictedCount.get());
+            System.out.println("   Recreated after eviction: " + recreated);
+        }
         System.out.println("   Memory efficiency: " + 
-                          (creationCount == flyweights.size() ? "Optimal" : "Suboptimal"));
+                          (recreated == 0 ? "Optimal" : "Suboptimal"));
     }
 }
 
@@ -69,8 +346,8 @@ class CharacterContext {
     private String color;
     private CharacterFlyweight flyweight;
     
-    public CharacterContext(char character, int row, int column, String font, int size, String color) {
-        this.flyweight = CharacterFactory.getCharacter(character);
+    public CharacterContext(int codePoint, int row, int column, String font, int size, String color) {
+        this.flyweight = CharacterFactory.getCharacter(codePoint);
         this.row = row;
         this.column = column;
         this.font = font;
@@ -82,6 +359,10 @@ class CharacterContext {
         flyweight.display(row, column, font, size, color);
     }
     
+    public void accept(GlyphVisitor visitor) {
+        visitor.visit(flyweight, row, column, font, size, color);
+    }
+    
     // Getters and setters for extrinsic state
     public void setPosition(int row, int column) {
         this.row = row;
@@ -93,47 +374,508 @@ class CharacterContext {
     public void setColor(String color) { this.color = color; }
 }
 
+// Callback used to walk a document's glyphs without exposing how they are stored
+interface GlyphVisitor {
+    void visit(CharacterFlyweight flyweight, int row, int column, String font, int size, String color);
+}
+
+// Storage backend for a document's glyphs and their extrinsic state
+interface GlyphStore {
+    // One glyph per code point, so a surrogate pair such as an emoji is a single glyph
+    void add(int codePoint, int row, int column, String font, int size, String color);
+    
+    // Appends text[from, to) on one row with a single style, one glyph and column per code point
+    default void addRun(CharSequence text, int from, int to, int row, int startColumn, 
+                        String font, int size, String color) {
+        int column = startColumn;
+        for (int i = from; i < to; ) {
+            int codePoint = java.lang.Character.codePointAt(text, i);
+            add(codePoint, row, column++, font, size, color);
+            i += java.lang.Character.charCount(codePoint);
+        }
+    }
+    
+    // Changes the style of glyphs [from, to) in insertion order
+    void restyle(int from, int to, String font, int size, String color);
+    
+    void forEach(GlyphVisitor visitor);
+    
+    int size();
+    
+    String getLayoutDescription();
+}
+
+// Classic layout - one context object per glyph
+class ObjectGlyphStore implements GlyphStore {
+    private final List<CharacterContext> characters = new ArrayList<>();
+    
+    @Override
+    public void add(int codePoint, int row, int column, String font, int size, String color) {
+        characters.add(new CharacterContext(codePoint, row, column, font, size, color));
+    }
+    
+    @Override
+    public void restyle(int from, int to, String font, int size, String color) {
+        for (CharacterContext context : characters.subList(from, to)) {
+            context.setFont(font);
+            context.setSize(size);
+            context.setColor(color);
+        }
+    }
+    
+    @Override
+    public void forEach(GlyphVisitor visitor) {
+        for (CharacterContext context : characters) {
+            context.accept(visitor);
+        }
+    }
+    
+    @Override
+    public int size() {
+        return characters.size();
+    }
+    
+    @Override
+    public String getLayoutDescription() {
+        return "object-per-glyph (CharacterContext)";
+    }
+}
+
+// Immutable font/size/color triple shared by every glyph drawn in that style
+final class TextStyle {
+    private final String font;
+    private final int size;
+    private final String color;
+    
+    public TextStyle(String font, int size, String color) {
+        this.font = font;
+        this.size = size;
+        this.color = color;
+    }
+    
+    public String getFont() { return font; }
+    public int getSize() { return size; }
+    public String getColor() { return color; }
+    
+    public boolean matches(String font, int size, String color) {
+        return this.size == size && this.font.equals(font) && this.color.equals(color);
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof TextStyle)) return false;
+        TextStyle other = (TextStyle) o;
+        return matches(other.font, other.size, other.color);
+    }
+    
+    @Override
+    public int hashCode() {
+        return Objects.hash(font, size, color);
+    }
+    
+    @Override
+    public String toString() {
+        return font + "/" + size + "/" + color;
+    }
+}
+
+// Interns styles to small integer IDs so glyphs can refer to them by number
+class StyleTable {
+    private final List<TextStyle> styles = new ArrayList<>();
+    private final Map<TextStyle, Integer> ids = new HashMap<>();
+    private int lastId = -1; // Consecutive glyphs usually share a style
+    
+    public int intern(String font, int size, String color) {
+        if (lastId >= 0 && styles.get(lastId).matches(font, size, color)) {
+            return lastId;
+        }
+        
+        TextStyle style = new TextStyle(font, size, color);
+        Integer id = ids.get(style);
+        
+        if (id == null) {
+            if (styles.size() > Short.MAX_VALUE) {
+                throw new IllegalStateException("Style table full: " + styles.size() + " styles");
+            }
+            id = styles.size();
+            styles.add(style);
+            ids.put(style, id);
+        }
+        
+        lastId = id;
+        return id;
+    }
+    
+    public TextStyle get(int id) {
+        return styles.get(id);
+    }
+    
+    public int size() {
+        return styles.size();
+    }
+}
+
+// Run-length encoded style column - each run is a contiguous range of glyphs
+// sharing one style ID, so a uniformly styled paragraph costs a single entry
+class StyleRuns {
+    private int[] starts = new int[8]; // First glyph index of each run
+    private short[] styleIds = new short[8];
+    private int runCount;
+    private int length; // Total glyphs covered by all runs
+    
+    public void append(int styleId, int glyphCount) {
+        if (glyphCount <= 0) {
+            return;
+        }
+        if (runCount > 0 && styleIds[runCount - 1] == styleId) {
+            length += glyphCount; // Same style as the tail run - just extend it
+            return;
+        }
+        insertRun(runCount, length, styleId);
+        length += glyphCount;
+    }
+    
+    public void restyle(int from, int to, int styleId) {
+        if (from < 0 || to > length || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") outside 0.." + length);
+        }
+        if (from == to) {
+            return;
+        }
+        
+        split(from);
+        split(to);
+        int first = runIndexOf(from);
+        int last = runIndexOf(to - 1);
+        
+        // Collapse the covered runs into one, then fold it into equal neighbours
+        removeRuns(first + 1, last + 1);
+        styleIds[first] = (short) styleId;
+        if (first + 1 < runCount && styleIds[first + 1] == styleId) {
+            removeRuns(first + 1, first + 2);
+        }
+        if (first > 0 && styleIds[first - 1] == styleId) {
+            removeRuns(first, first + 1);
+        }
+    }
+    
+    public int runIndexOf(int glyphIndex) {
+        int low = 0;
+        int high = runCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (starts[mid] <= glyphIndex) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+    
+    public int styleAt(int glyphIndex) {
+        return styleIds[runIndexOf(glyphIndex)];
+    }
+    
+    public int getRunCount() { return runCount; }
+    public int getRunStart(int run) { return starts[run]; }
+    public int getRunEnd(int run) { return run + 1 < runCount ? starts[run + 1] : length; }
+    public int getRunStyle(int run) { return styleIds[run]; }
+    
+    // Makes glyphIndex the first glyph of a run, splitting the run that contains it
+    private void split(int glyphIndex) {
+        if (glyphIndex <= 0 || glyphIndex >= length) {
+            return;
+        }
+        int run = runIndexOf(glyphIndex);
+        if (starts[run] != glyphIndex) {
+            insertRun(run + 1, glyphIndex, styleIds[run]);
+        }
+    }
+    
+    private void insertRun(int run, int start, int styleId) {
+        if (runCount == starts.length) {
+            starts = Arrays.copyOf(starts, runCount * 2);
+            styleIds = Arrays.copyOf(styleIds, runCount * 2);
+        }
+        System.arraycopy(starts, run, starts, run + 1, runCount - run);
+        System.arraycopy(styleIds, run, styleIds, run + 1, runCount - run);
+        starts[run] = start;
+        styleIds[run] = (short) styleId;
+        runCount++;
+    }
+    
+    private void removeRuns(int from, int to) {
+        System.arraycopy(starts, to, starts, from, runCount - to);
+        System.arraycopy(styleIds, to, styleIds, from, runCount - to);
+        runCount -= to - from;
+    }
+}
+
+// Struct-of-arrays layout - parallel primitive columns, with styles held as
+// run-length spans over a per-document style table
+class ColumnarGlyphStore implements GlyphStore {
+    private static final int BYTES_PER_GLYPH = 3 * Integer.BYTES;
+    
+    private int[] glyphs; // Code points
+    private int[] rows;
+    private int[] columns;
+    private int count;
+    private final StyleRuns runs = new StyleRuns();
+    private final StyleTable styles = new StyleTable();
+    
+    public ColumnarGlyphStore() {
+        this(64);
+    }
+    
+    public ColumnarGlyphStore(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        glyphs = new int[capacity];
+        rows = new int[capacity];
+        columns = new int[capacity];
+    }
+    
+    @Override
+    public void add(int codePoint, int row, int column, String font, int size, String color) {
+        ensureCapacity(count + 1);
+        glyphs[count] = codePoint;
+        rows[count] = row;
+        columns[count] = column;
+        runs.append(styles.intern(font, size, color), 1);
+        count++;
+    }
+    
+    @Override
+    public void addRun(CharSequence text, int from, int to, int row, int startColumn, 
+                       String font, int size, String color) {
+        if (to <= from) {
+            return;
+        }
+        ensureCapacity(count + (to - from)); // At least one char per code point
+        int length = 0;
+        for (int i = from; i < to; length++) {
+            int codePoint = java.lang.Character.codePointAt(text, i);
+            glyphs[count + length] = codePoint;
+            columns[count + length] = startColumn + length;
+            i += java.lang.Character.charCount(codePoint);
+        }
+        Arrays.fill(rows, count, count + length, row);
+        runs.append(styles.intern(font, size, color), length);
+        count += length;
+    }
+    
+    @Override
+    public void restyle(int from, int to, String font, int size, String color) {
+        runs.restyle(from, to, styles.intern(font, size, color));
+    }
+    
+    private void ensureCapacity(int required) {
+        if (required <= glyphs.length) {
+            return;
+        }
+        int capacity = Math.max(required, glyphs.length * 2);
+        glyphs = Arrays.copyOf(glyphs, capacity);
+        rows = Arrays.copyOf(rows, capacity);
+        columns = Arrays.copyOf(columns, capacity);
+    }
+    
+    @Override
+    public void forEach(GlyphVisitor visitor) {
+        // Walk span by span so each style is resolved once per run, not per glyph
+        for (int run = 0; run < runs.getRunCount(); run++) {
+            TextStyle style = styles.get(runs.getRunStyle(run));
+            for (int i = runs.getRunStart(run); i < runs.getRunEnd(run); i++) {
+                visitor.visit(CharacterFactory.getCharacter(glyphs[i]), rows[i], columns[i], 
+                             style.getFont(), style.getSize(), style.getColor());
+            }
+        }
+    }
+    
+    @Override
+    public int size() {
+        return count;
+    }
+    
+    public int getStyleCount() {
+        return styles.size();
+    }
+    
+    public int getRunCount() {
+        return runs.getRunCount();
+    }
+    
+    @Override
+    public String getLayoutDescription() {
+        return "columnar (" + BYTES_PER_GLYPH + " bytes/glyph, " + runs.getRunCount() + 
+               " style runs over " + styles.size() + " interned styles)";
+    }
+}
+
+// Batches glyph output into a reusable buffer and hands it to the sink in bulk,
+// instead of building a String and taking the console lock for every glyph
+class GlyphRenderer implements GlyphVisitor {
+    // LINE flushes the sink itself at every row change, so each line reaches the console as it is
+    // rendered; PAGE only hands the sink full 8 KB pages and flushes it in finish()
+    enum FlushPolicy { LINE, PAGE }
+    
+    private static final int PAGE_SIZE = 8192;
+    
+    private final Writer sink;
+    private final FlushPolicy policy;
+    private final StringBuilder buffer = new StringBuilder(PAGE_SIZE + 256);
+    private char[] transfer = new char[PAGE_SIZE + 256];
+    private int currentRow = Integer.MIN_VALUE;
+    private long glyphsRendered;
+    private long flushes;
+    
+    public GlyphRenderer(Writer sink, FlushPolicy policy) {
+        this.sink = sink;
+        this.policy = policy;
+    }
+    
+    // Encodes with the charset System.out itself uses, so glyphs match the surrounding console output
+    // instead of depending on the platform default
+    public static GlyphRenderer forConsole(FlushPolicy policy) {
+        return new GlyphRenderer(new OutputStreamWriter(System.out, consoleCharset()), policy);
+    }
+    
+    // stdout.encoding from JDK 19, sun.stdout.encoding before it; System.out falls back to the
+    // default charset when neither is set
+    static Charset consoleCharset() {
+        String name = System.getProperty("stdout.encoding", System.getProperty("sun.stdout.encoding"));
+        if (name != null) {
+            try {
+                return Charset.forName(name);
+            } catch (IllegalArgumentException e) {
+                // Unknown name - System.out would have fallen back to the default as well
+            }
+        }
+        return Charset.defaultCharset();
+    }
+    
+    @Override
+    public void visit(CharacterFlyweight flyweight, int row, int column, String font, int size, String color) {
+        if (row != currentRow) {
+            if (policy == FlushPolicy.LINE) {
+                flushBuffer();
+                flushSink();
+            }
+            currentRow = row;
+        }
+        flyweight.display(buffer, row, column, font, size, color);
+        glyphsRendered++;
+        if (buffer.length() >= PAGE_SIZE) {
+            flushBuffer();
+        }
+    }
+    
+    // Writes out whatever is still buffered; call once rendering is done
+    public void finish() {
+        flushBuffer();
+        flushSink();
+        currentRow = Integer.MIN_VALUE;
+    }
+    
+    private void flushSink() {
+        try {
+            sink.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to flush rendered glyphs", e);
+        }
+    }
+    
+    private void flushBuffer() {
+        int length = buffer.length();
+        if (length == 0) {
+            return;
+        }
+        if (length > transfer.length) {
+            transfer = new char[length];
+        }
+        buffer.getChars(0, length, transfer, 0);
+        try {
+            sink.write(transfer, 0, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write rendered glyphs", e);
+        }
+        buffer.setLength(0);
+        flushes++;
+    }
+    
+    public long getGlyphsRendered() { return glyphsRendered; }
+    public long getFlushCount() { return flushes; }
+}
+
 // Document class that manages many characters
 class Document {
-    private List<CharacterContext> characters;
+    private GlyphStore characters;
     private String documentName;
     
     public Document(String documentName) {
+        this(documentName, new ObjectGlyphStore());
+    }
+    
+    public Document(String documentName, GlyphStore characters) {
         this.documentName = documentName;
-        this.characters = new ArrayList<>();
+        this.characters = characters;
     }
     
-    public void addCharacter(char character, int row, int column, String font, int size, String color) {
-        CharacterContext context = new CharacterContext(character, row, column, font, size, color);
-        characters.add(context);
+    public void addCharacter(int codePoint, int row, int column, String font, int size, String color) {
+        characters.add(codePoint, row, column, font, size, color);
     }
     
     public void addText(String text, int startRow, int startColumn, String font, int size, String color) {
-        for (int i = 0; i < text.length(); i++) {
-            char ch = text.charAt(i);
-            if (ch == '\n') {
+        // Each line of the text goes to the store as one run sharing a single style. Columns count
+        // code points, so an emoji takes one column and one glyph
+        int lineStart = 0;
+        int lineColumn = startColumn;
+        int codePoints = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            i += java.lang.Character.charCount(codePoint);
+            codePoints++;
+            if (codePoint == '\n') {
+                characters.addRun(text, lineStart, i - 1, startRow, lineColumn, font, size, color);
                 startRow++;
-                startColumn = 0;
-            } else {
-                addCharacter(ch, startRow, startColumn + i, font, size, color);
+                lineStart = i;
+                lineColumn = codePoints; // startColumn drops to 0 on later lines
             }
         }
+        characters.addRun(text, lineStart, text.length(), startRow, lineColumn, font, size, color);
+    }
+    
+    // Restyles the glyphs at positions [from, to) in the order they were added
+    public void applyStyle(int from, int to, String font, int size, String color) {
+        characters.restyle(from, to, font, size, color);
     }
     
     public void display() {
         System.out.println("\n📄 Displaying document: " + documentName);
-        for (CharacterContext context : characters) {
-            context.display();
-        }
+        display(GlyphRenderer.forConsole(GlyphRenderer.FlushPolicy.LINE));
+    }
+    
+    public void display(GlyphRenderer renderer) {
+        characters.forEach(renderer);
+        renderer.finish();
+    }
+    
+    public void forEachGlyph(GlyphVisitor visitor) {
+        characters.forEach(visitor);
     }
     
     public int getCharacterCount() {
         return characters.size();
     }
     
+    public String getName() {
+        return documentName;
+    }
+    
     public void showMemoryUsage() {
         System.out.println("📊 Document Memory Usage:");
         System.out.println("   Document: " + documentName);
+        System.out.println("   Storage layout: " + characters.getLayoutDescription());
         System.out.println("   Total characters: " + characters.size());
         System.out.println("   Unique flyweights: " + CharacterFactory.getFlyweightCount());
         System.out.println("   Memory savings: " + 
@@ -142,9 +884,253 @@ class Document {
     }
 }
 
+// Compact binary snapshot of a document, laid out column by column so it can be
+// memory-mapped and read in place:
+//
+//   header   magic, version, glyph count, run count, style count
+//   rows     int[glyphs]      columns  int[glyphs]     run starts  int[runs]
+//   glyphs   int[glyphs]      run styles short[runs]    (glyphs are code points)
+//   styles   (font, size, color) per style ID, then the document name
+class DocumentSnapshot {
+    static final int MAGIC = 0x46574453; // "FWDS"
+    static final int VERSION = 2; // Version 1 stored glyphs as UTF-16 chars
+    static final int HEADER_BYTES = 5 * Integer.BYTES;
+    
+    public static void write(Document document, Path path) throws IOException {
+        // First pass: derive style runs and the style table without copying glyphs
+        StyleTable styles = new StyleTable();
+        StyleRuns runs = new StyleRuns();
+        document.forEachGlyph((flyweight, row, column, font, size, color) -> 
+            runs.append(styles.intern(font, size, color), 1));
+        
+        int glyphCount = document.getCharacterCount();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(glyphCount);
+            out.writeInt(runs.getRunCount());
+            out.writeInt(styles.size());
+            
+            // One pass per column keeps the file column-major without buffering the document
+            writeColumn(document, out, (flyweight, row, column) -> out.writeInt(row));
+            writeColumn(document, out, (flyweight, row, column) -> out.writeInt(column));
+            for (int run = 0; run < runs.getRunCount(); run++) {
+                out.writeInt(runs.getRunStart(run));
+            }
+            writeColumn(document, out, (flyweight, row, column) -> out.writeInt(flyweight.getCodePoint()));
+            for (int run = 0; run < runs.getRunCount(); run++) {
+                out.writeShort(runs.getRunStyle(run));
+            }
+            
+            for (int id = 0; id < styles.size(); id++) {
+                TextStyle style = styles.get(id);
+                out.writeUTF(style.getFont());
+                out.writeInt(style.getSize());
+                out.writeUTF(style.getColor());
+            }
+            out.writeUTF(document.getName());
+        }
+    }
+    
+    public static Document open(Path path) throws IOException {
+        MappedGlyphStore store = MappedGlyphStore.map(path);
+        return new Document(store.getDocumentName(), store);
+    }
+    
+    private interface ColumnWriter {
+        void write(CharacterFlyweight flyweight, int row, int column) throws IOException;
+    }
+    
+    private static void writeColumn(Document document, DataOutputStream out, ColumnWriter writer) 
+            throws IOException {
+        try {
+            document.forEachGlyph((flyweight, row, column, font, size, color) -> {
+                try {
+                    writer.write(flyweight, row, column);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
+
+// Read-only glyph store that serves a DocumentSnapshot straight from mapped file
+// regions - opening costs a header read, pages are faulted in as they are visited.
+// Each column is mapped separately, so files may exceed the 2 GB limit of one mapping
+class MappedGlyphStore implements GlyphStore {
+    private final IntBuffer rows;
+    private final IntBuffer columns;
+    private final IntBuffer runStarts;
+    private final IntBuffer glyphs;
+    private final ShortBuffer runStyles;
+    private final TextStyle[] styles;
+    private final String documentName;
+    private final int glyphCount;
+    private final int runCount;
+    
+    private MappedGlyphStore(FileChannel channel) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize < DocumentSnapshot.HEADER_BYTES) {
+            throw new IOException("Truncated snapshot header: " + fileSize + " bytes");
+        }
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, DocumentSnapshot.HEADER_BYTES);
+        if (header.getInt() != DocumentSnapshot.MAGIC) {
+            throw new IOException("Not a document snapshot");
+        }
+        int version = header.getInt();
+        if (version != DocumentSnapshot.VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+        glyphCount = header.getInt();
+        runCount = header.getInt();
+        int styleCount = header.getInt();
+        
+        // A corrupt header must not reach the mappings or the style array: every column has to fit
+        // in the file, and each style entry takes at least 8 bytes (two empty strings and a size)
+        long columnBytes = 12L * glyphCount + 6L * runCount;
+        long tailBytes = fileSize - DocumentSnapshot.HEADER_BYTES - columnBytes;
+        if (glyphCount < 0 || runCount < 0 || runCount > glyphCount || styleCount < 0 
+                || tailBytes < 2 || styleCount > (tailBytes - 2) / 8) {
+            throw new IOException("Corrupt snapshot header: " + glyphCount + " glyphs, " + runCount + 
+                                  " runs, " + styleCount + " styles in " + fileSize + " bytes");
+        }
+        
+        long offset = DocumentSnapshot.HEADER_BYTES;
+        rows = map(channel, offset, 4L * glyphCount).asIntBuffer();
+        offset += 4L * glyphCount;
+        columns = map(channel, offset, 4L * glyphCount).asIntBuffer();
+        offset += 4L * glyphCount;
+        runStarts = map(channel, offset, 4L * runCount).asIntBuffer();
+        offset += 4L * runCount;
+        glyphs = map(channel, offset, 4L * glyphCount).asIntBuffer();
+        offset += 4L * glyphCount;
+        runStyles = map(channel, offset, 2L * runCount).asShortBuffer();
+        offset += 2L * runCount;
+        
+        // The style table and name are tiny, so decode them eagerly
+        ByteBuffer tail = map(channel, offset, channel.size() - offset);
+        DataInputStream in = new DataInputStream(new ByteBufferInputStream(tail));
+        styles = new TextStyle[styleCount];
+        for (int id = 0; id < styleCount; id++) {
+            styles[id] = new TextStyle(in.readUTF(), in.readInt(), in.readUTF());
+        }
+        documentName = in.readUTF();
+        
+        // Runs must cover every glyph exactly once: the first starts at 0, starts strictly increase,
+        // and none starts past the last glyph - otherwise forEach would skip or overrun glyphs
+        if (glyphCount > 0 && runCount == 0) {
+            throw new IOException("Corrupt snapshot: " + glyphCount + " glyphs but no style runs");
+        }
+        int previousStart = -1;
+        for (int run = 0; run < runCount; run++) {
+            int styleId = runStyles.get(run);
+            if (styleId < 0 || styleId >= styleCount) {
+                throw new IOException("Corrupt snapshot: run " + run + " has style " + styleId);
+            }
+            int start = runStarts.get(run);
+            if ((run == 0 && start != 0) || start <= previousStart || start >= glyphCount) {
+                throw new IOException("Corrupt snapshot: run " + run + " starts at " + start + 
+                                      " after " + previousStart + " of " + glyphCount + " glyphs");
+            }
+            previousStart = start;
+        }
+    }
+    
+    public static MappedGlyphStore map(Path path) throws IOException {
+        // The mappings stay valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MappedGlyphStore(channel);
+        }
+    }
+    
+    private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot column too large to map: " + length + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+    
+    @Override
+    public void add(int codePoint, int row, int column, String font, int size, String color) {
+        throw new UnsupportedOperationException("Mapped snapshots are read-only");
+    }
+    
+    @Override
+    public void restyle(int from, int to, String font, int size, String color) {
+        throw new UnsupportedOperationException("Mapped snapshots are read-only");
+    }
+    
+    @Override
+    public void forEach(GlyphVisitor visitor) {
+        for (int run = 0; run < runCount; run++) {
+            TextStyle style = styles[runStyles.get(run)];
+            int end = run + 1 < runCount ? runStarts.get(run + 1) : glyphCount;
+            for (int i = runStarts.get(run); i < end; i++) {
+                visitor.visit(glyphAt(i), rows.get(i), columns.get(i), 
+                             style.getFont(), style.getSize(), style.getColor());
+            }
+        }
+    }
+    
+    // Glyphs are checked as they are read, so opening stays lazy; a bad one means a corrupt file
+    private CharacterFlyweight glyphAt(int index) {
+        int codePoint = glyphs.get(index);
+        if (!java.lang.Character.isValidCodePoint(codePoint)) {
+            throw new UncheckedIOException(new IOException("Corrupt snapshot: glyph " + index + 
+                                                           " is not a code point: " + codePoint));
+        }
+        return CharacterFactory.getCharacter(codePoint);
+    }
+    
+    @Override
+    public int size() {
+        return glyphCount;
+    }
+    
+    public String getDocumentName() {
+        return documentName;
+    }
+    
+    @Override
+    public String getLayoutDescription() {
+        return "memory-mapped snapshot (" + runCount + " style runs over " + styles.length + " styles)";
+    }
+    
+    // Lets DataInputStream decode the modified-UTF-8 strings of the style table
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+        
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+        
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
+
 // Particle system example for flyweight pattern
 interface ParticleFlyweight {
     void move(double x, double y, double velocityX, double velocityY, String color, double size);
+    
+    // Appends the line move() would print, so callers can order output themselves
+    void move(StringBuilder out, double x, double y, double velocityX, double velocityY, String color, double size);
 }
 
 class ParticleType implements ParticleFlyweight {
@@ -156,7 +1142,6 @@ class ParticleType implements ParticleFlyweight {
         this.name = name;
         this.texture = texture;
         this.behavior = behavior;
-        System.out.println("🎨 Creating particle type: " + name);
     }
     
     @Override
@@ -169,29 +1154,189 @@ class ParticleType implements ParticleFlyweight {
                           "color:" + color + " size:" + size + " texture:" + texture);
     }
     
+    @Override
+    public void move(StringBuilder out, double x, double y, double velocityX, double velocityY, String color, double size) {
+        out.append("🎆 ").append(name).append(" particle at (")
+           .append(String.format("%.1f", x)).append(',').append(String.format("%.1f", y))
+           .append(") moving (").append(String.format("%.1f", velocityX)).append(',')
+           .append(String.format("%.1f", velocityY)).append(") ")
+           .append("color:").append(color).append(" size:").append(size).append(" texture:").append(texture)
+           .append('\n');
+    }
+    
+    public String getName() { return name; }
+}
+
+// Typed identity of a particle type - compares each field separately, so
+// "Fire_x"/"y" and "Fire"/"x_y" no longer collide, and hashes only once
+final class ParticleTypeKey {
+    private final String name;
+    private final String texture;
+    private final String behavior;
+    private final int hash;
+    
+    public ParticleTypeKey(String name, String texture, String behavior) {
+        this.name = Objects.requireNonNull(name, "name");
+        this.texture = Objects.requireNonNull(texture, "texture");
+        this.behavior = Objects.requireNonNull(behavior, "behavior");
+        this.hash = 31 * (31 * name.hashCode() + texture.hashCode()) + behavior.hashCode();
+    }
+    
     public String getName() { return name; }
+    public String getTexture() { return texture; }
+    public String getBehavior() { return behavior; }
+    
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ParticleTypeKey)) return false;
+        ParticleTypeKey other = (ParticleTypeKey) o;
+        return hash == other.hash && name.equals(other.name) && 
+               texture.equals(other.texture) && behavior.equals(other.behavior);
+    }
+    
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+    
+    @Override
+    public String toString() {
+        return name + "_" + texture + "_" + behavior;
+    }
 }
 
 class ParticleFactory {
-    private static final Map<String, ParticleFlyweight> particleTypes = new HashMap<>();
+    // Values are the flyweight itself in STRONG mode, or a PoolEntry reference in WEAK/SOFT mode
+    private static final ConcurrentHashMap<ParticleTypeKey, Object> particleTypes = 
+        new ConcurrentHashMap<>();
+    private static final ReferenceQueue<ParticleFlyweight> collected = new ReferenceQueue<>();
+    private static volatile PoolMode poolMode = PoolMode.STRONG;
+    // The most recently evicted keys, so a recreation is only counted for a type really seen
+    // before. Capped so it stays bounded however many user-defined types come and go; a type
+    // evicted longer ago than that is rebuilt without being counted
+    private static final int EVICTED_KEY_LIMIT = 4096;
+    private static final Set<ParticleTypeKey> evictedKeys = Collections.newSetFromMap(
+        new LinkedHashMap<ParticleTypeKey, Boolean>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ParticleTypeKey, Boolean> eldest) {
+                return size() > EVICTED_KEY_LIMIT;
+            }
+        });
+    
+    private static final AtomicInteger evictedCount = new AtomicInteger();
+    private static final AtomicInteger recreatedCount = new AtomicInteger();
     
     public static ParticleFlyweight getParticleType(String name, String texture, String behavior) {
-        String key = name + "_" + texture + "_" + behavior;
-        ParticleFlyweight particleType = particleTypes.get(key);
+        return getParticleType(new ParticleTypeKey(name, texture, behavior));
+    }
+    
+    // Callers that look the same type up repeatedly can build the key once and reuse it
+    public static ParticleFlyweight getParticleType(ParticleTypeKey key) {
+        ParticleFlyweight particleType = PoolMode.unwrap(particleTypes.get(key));
         
         if (particleType == null) {
-            particleType = new ParticleType(name, texture, behavior);
-            particleTypes.put(key, particleType);
+            particleType = createParticleType(key);
         }
         
         return particleType;
     }
     
+    // Like CharacterFactory, the candidate is built and announced outside the map's bin lock;
+    // only the thread whose putIfAbsent/replace publishes it counts a creation
+    private static ParticleFlyweight createParticleType(ParticleTypeKey key) {
+        expungeCollected();
+        Object entry = particleTypes.get(key);
+        
+        while (true) {
+            ParticleFlyweight existing = PoolMode.unwrap(entry);
+            if (existing != null) {
+                return existing;
+            }
+            
+            ParticleFlyweight candidate = new ParticleType(key.getName(), key.getTexture(), key.getBehavior());
+            Object slot = poolMode.wrap(candidate, key, collected);
+            boolean published = entry == null 
+                ? particleTypes.putIfAbsent(key, slot) == null 
+                : particleTypes.replace(key, entry, slot);
+            if (published) {
+                reconcileMode(key);
+                boolean evicted = forgetEvicted(key);
+                if (entry != null || evicted) {
+                    recreatedCount.incrementAndGet();
+                }
+                System.out.println("🎨 Creating particle type: " + key.getName());
+                return candidate;
+            }
+            
+            entry = particleTypes.get(key);
+        }
+    }
+    
+    // Publication does not take the setPoolMode lock, so an entry can be published in the old mode
+    // after replaceAll has passed its key. Re-check after publishing and re-wrap if needed; a
+    // later switch's replaceAll waits for this bin lock, so one pass is enough
+    private static void reconcileMode(ParticleTypeKey key) {
+        particleTypes.computeIfPresent(key, (k, entry) -> {
+            ParticleFlyweight particleType = PoolMode.unwrap(entry);
+            PoolMode mode = poolMode;
+            return particleType == null || PoolMode.of(entry) == mode ? entry : mode.wrap(particleType, k, collected);
+        });
+    }
+    
+    private static void expungeCollected() {
+        Reference<? extends ParticleFlyweight> reference;
+        while ((reference = collected.poll()) != null) {
+            ParticleTypeKey key = (ParticleTypeKey) ((PoolEntry) reference).getKey();
+            particleTypes.remove(key, reference);
+            evictedCount.incrementAndGet();
+            synchronized (evictedKeys) {
+                evictedKeys.add(key);
+            }
+        }
+    }
+    
+    // Reports whether the key was evicted earlier and clears it, so a later eviction counts afresh
+    private static boolean forgetEvicted(ParticleTypeKey key) {
+        synchronized (evictedKeys) {
+            return evictedKeys.remove(key);
+        }
+    }
+    
+    // Switches how the pool holds particle types, converting the ones already pooled
+    public static synchronized void setPoolMode(PoolMode mode) {
+        poolMode = mode;
+        particleTypes.replaceAll((key, entry) -> {
+            ParticleFlyweight particleType = PoolMode.unwrap(entry);
+            return particleType == null ? entry : mode.wrap(particleType, key, collected);
+        });
+    }
+    
+    public static PoolMode getPoolMode() {
+        return poolMode;
+    }
+    
     public static int getParticleTypeCount() {
+        expungeCollected();
         return particleTypes.size();
     }
     
+    public static int getEvictedCount() {
+        expungeCollected();
+        return evictedCount.get();
+    }
+    
+    public static int getRecreatedCount() {
+        return recreatedCount.get();
+    }
+    
+    // The pool's backing structure, for heap measurement
+    static Object poolRoots() {
+        return particleTypes;
+    }
+    
     public static void showParticleTypes() {
+        expungeCollected();
         System.out.println("🎨 Available particle types: " + particleTypes.keySet());
     }
 }
@@ -215,11 +1360,18 @@ class Particle {
     }
     
     public void update() {
-        // Update position
+        integrate();
+        render();
+    }
+    
+    // Update position
+    public void integrate() {
         x += velocityX;
         y += velocityY;
-        
-        // Use flyweight for rendering
+    }
+    
+    // Use flyweight for rendering
+    public void render() {
         type.move(x, y, velocityX, velocityY, color, size);
     }
     
@@ -237,6 +1389,7 @@ class Particle {
 class ParticleSystem {
     private List<Particle> particles;
     private String systemName;
+    private ParticleIntegrator integrator; // null means the classic sequential update
     
     public ParticleSystem(String systemName) {
         this.systemName = systemName;
@@ -247,17 +1400,44 @@ class ParticleSystem {
                           String color, double size, String particleTypeName, 
                           String texture, String behavior) {
         ParticleFlyweight type = ParticleFactory.getParticleType(particleTypeName, texture, behavior);
+        addParticle(x, y, vx, vy, color, size, type);
+    }
+    
+    // Pre-resolved type handle - no key building or hashing per particle
+    public void addParticle(double x, double y, double vx, double vy, 
+                          String color, double size, ParticleFlyweight type) {
         Particle particle = new Particle(x, y, vx, vy, color, size, type);
         particles.add(particle);
     }
     
     public void update() {
         System.out.println("\n🎆 Updating particle system: " + systemName);
+        if (integrator == null) {
+            for (Particle particle : particles) {
+                particle.update();
+            }
+            return;
+        }
+        
+        // Integrate in parallel, then render in list order so output stays deterministic
+        integrator.forEachChunk(particles.size(), (from, to) -> {
+            for (int i = from; i < to; i++) {
+                particles.get(i).integrate();
+            }
+        });
         for (Particle particle : particles) {
-            particle.update();
+            particle.render();
         }
     }
     
+    public int getParticleCount() {
+        return particles.size();
+    }
+    
+    public void setIntegrator(ParticleIntegrator integrator) {
+        this.integrator = integrator;
+    }
+    
     public void showStatistics() {
         System.out.println("\n📊 Particle System Statistics:");
         System.out.println("   System: " + systemName);
@@ -269,27 +1449,592 @@ class ParticleSystem {
     }
 }
 
-// Memory usage simulator
-class MemorySimulator {
-    public static void simulateWithoutFlyweight(int characterCount) {
-        System.out.println("\n💾 Memory simulation WITHOUT Flyweight:");
-        System.out.println("   Characters: " + characterCount);
-        System.out.println("   Memory per character object: ~64 bytes");
-        System.out.println("   Total memory: ~" + (characterCount * 64) + " bytes");
+// Data-oriented particle storage - one primitive array per field instead of one
+// object per particle, so an update is a straight pass over contiguous doubles
+class ParticleStore {
+    private double[] x;
+    private double[] y;
+    private double[] velocityX;
+    private double[] velocityY;
+    private double[] size;
+    private short[] typeIndex;  // Slot in the types palette below
+    private short[] colorIndex; // Slot in the colors palette below
+    private int count;
+    
+    // Flyweights obtained from ParticleFactory, referenced by typeIndex
+    private final List<ParticleFlyweight> types = new ArrayList<>();
+    private final Map<ParticleFlyweight, Integer> typeSlots = new IdentityHashMap<>();
+    private final List<String> colors = new ArrayList<>();
+    private final Map<String, Integer> colorSlots = new HashMap<>();
+    
+    public ParticleStore(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        x = new double[capacity];
+        y = new double[capacity];
+        velocityX = new double[capacity];
+        velocityY = new double[capacity];
+        size = new double[capacity];
+        typeIndex = new short[capacity];
+        colorIndex = new short[capacity];
+    }
+    
+    public int addParticle(double x, double y, double vx, double vy, 
+                           String color, double size, String particleTypeName, 
+                           String texture, String behavior) {
+        return addParticle(x, y, vx, vy, color, size, 
+                           ParticleFactory.getParticleType(particleTypeName, texture, behavior));
+    }
+    
+    public int addParticle(double x, double y, double vx, double vy, 
+                           String color, double size, ParticleFlyweight type) {
+        if (count == this.x.length) {
+            grow();
+        }
+        int i = count++;
+        this.x[i] = x;
+        this.y[i] = y;
+        this.velocityX[i] = vx;
+        this.velocityY[i] = vy;
+        this.size[i] = size;
+        this.typeIndex[i] = (short) slotOf(type, types, typeSlots);
+        this.colorIndex[i] = (short) slotOf(color, colors, colorSlots);
+        return i;
+    }
+    
+    private static <T> int slotOf(T value, List<T> palette, Map<T, Integer> slots) {
+        Integer slot = slots.get(value);
+        if (slot == null) {
+            if (palette.size() > Short.MAX_VALUE) {
+                throw new IllegalStateException("Palette full: " + palette.size() + " entries");
+            }
+            slot = palette.size();
+            palette.add(value);
+            slots.put(value, slot);
+        }
+        return slot;
+    }
+    
+    private void grow() {
+        int capacity = x.length * 2;
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        velocityX = Arrays.copyOf(velocityX, capacity);
+        velocityY = Arrays.copyOf(velocityY, capacity);
+        size = Arrays.copyOf(size, capacity);
+        typeIndex = Arrays.copyOf(typeIndex, capacity);
+        colorIndex = Arrays.copyOf(colorIndex, capacity);
+    }
+    
+    // Integration only - no rendering, no allocation, no virtual calls
+    public void step() {
+        step(0, count);
+    }
+    
+    public void step(int from, int to) {
+        double[] px = x, py = y, vx = velocityX, vy = velocityY;
+        for (int i = from; i < to; i++) {
+            px[i] += vx[i];
+            py[i] += vy[i];
+        }
+    }
+    
+    // Rendering is a separate pass so it can run less often than integration
+    public void render() {
+        render(0, count);
+    }
+    
+    public void render(int from, int to) {
+        for (int i = from; i < to; i++) {
+            types.get(typeIndex[i]).move(x[i], y[i], velocityX[i], velocityY[i], 
+                                         colors.get(colorIndex[i]), size[i]);
+        }
+    }
+    
+    public void render(StringBuilder out, int from, int to) {
+        for (int i = from; i < to; i++) {
+            types.get(typeIndex[i]).move(out, x[i], y[i], velocityX[i], velocityY[i], 
+                                         colors.get(colorIndex[i]), size[i]);
+        }
+    }
+    
+    // True when positions and velocities match bit for bit
+    public boolean hasSameState(ParticleStore other) {
+        return count == other.count && 
+               Arrays.equals(x, 0, count, other.x, 0, count) && 
+               Arrays.equals(y, 0, count, other.y, 0, count) && 
+               Arrays.equals(velocityX, 0, count, other.velocityX, 0, count) && 
+               Arrays.equals(velocityY, 0, count, other.velocityY, 0, count);
+    }
+    
+    public int size() { return count; }
+    public double getX(int i) { return x[i]; }
+    public double getY(int i) { return y[i]; }
+    public int getTypeCount() { return types.size(); }
+}
+
+// Splits particle work into fixed-size index chunks and runs them on a ForkJoinPool.
+// Each particle is integrated by exactly one task with the same arithmetic as the
+// sequential loop, so results are bit-identical whatever the parallelism level
+class ParticleIntegrator implements AutoCloseable {
+    interface RangeOperation {
+        void apply(int from, int to);
+    }
+    
+    private final int parallelism;
+    private final int chunkSize;
+    private final ForkJoinPool pool; // null when running sequentially
+    
+    public ParticleIntegrator(int parallelism) {
+        this(parallelism, 16_384);
+    }
+    
+    public ParticleIntegrator(int parallelism, int chunkSize) {
+        if (parallelism < 1 || chunkSize < 1) {
+            throw new IllegalArgumentException("Parallelism and chunk size must be positive");
+        }
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+    
+    public void step(ParticleStore store) {
+        forEachChunk(store.size(), store::step);
+    }
+    
+    // Chunks are formatted concurrently but emitted in index order
+    public void render(ParticleStore store, PrintStream out) {
+        int count = store.size();
+        StringBuilder[] chunks = new StringBuilder[(count + chunkSize - 1) / chunkSize];
+        forEachChunk(count, (from, to) -> {
+            StringBuilder chunk = new StringBuilder();
+            store.render(chunk, from, to);
+            chunks[from / chunkSize] = chunk;
+        });
+        for (StringBuilder chunk : chunks) {
+            out.print(chunk);
+        }
+        out.flush();
+    }
+    
+    public void forEachChunk(int count, RangeOperation operation) {
+        if (pool == null) {
+            for (int from = 0; from < count; from += chunkSize) {
+                operation.apply(from, Math.min(count, from + chunkSize));
+            }
+        } else if (count > 0) {
+            pool.invoke(new ChunkTask(operation, 0, count));
+        }
+    }
+    
+    public int getParallelism() { return parallelism; }
+    public int getChunkSize() { return chunkSize; }
+    
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+    
+    private class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        
+        private final RangeOperation operation;
+        private final int from;
+        private final int to;
+        
+        ChunkTask(RangeOperation operation, int from, int to) {
+            this.operation = operation;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            int chunks = (to - from + chunkSize - 1) / chunkSize;
+            if (chunks <= 1) {
+                operation.apply(from, to);
+                return;
+            }
+            // Split on a chunk boundary so every leaf covers exactly one chunk
+            int mid = from + (chunks / 2) * chunkSize;
+            invokeAll(new ChunkTask(operation, from, mid), new ChunkTask(operation, mid, to));
+        }
+    }
+}
+
+// Measures raw integration throughput of a ParticleStore
+class ParticleBenchmark {
+    public static void main(String[] args) {
+        int particles = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        if (parallelism > 1) {
+            compareParallel(particles, steps, parallelism);
+        } else {
+            run(particles, steps);
+        }
+    }
+    
+    public static void run(int particles, int steps) {
+        ParticleStore store = populate(particles);
+        
+        for (int i = 0; i < 10; i++) {
+            store.step(); // Warm-up
+        }
+        
+        long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            store.step();
+        }
+        long nanos = System.nanoTime() - start;
+        
+        double seconds = nanos / 1_000_000_000.0;
+        System.out.println("⏱️  Integrated " + particles + " particles x " + steps + " steps:");
+        System.out.println("   Steps/sec: " + String.format("%.1f", steps / seconds));
+        System.out.println("   Particle updates/sec: " + String.format("%,.0f", particles * (double) steps / seconds));
+    }
+    
+    public static void compareParallel(int particles, int steps, int parallelism) {
+        ParticleStore sequential = populate(particles);
+        ParticleStore parallel = populate(particles);
+        
+        try (ParticleIntegrator single = new ParticleIntegrator(1);
+             ParticleIntegrator multi = new ParticleIntegrator(parallelism)) {
+            long sequentialNanos = timeSteps(single, sequential, steps);
+            long parallelNanos = timeSteps(multi, parallel, steps);
+            
+            System.out.println("⏱️  " + particles + " particles x " + steps + " steps:");
+            System.out.println("   Sequential: " + String.format("%.1f", steps / (sequentialNanos / 1e9)) + " steps/sec");
+            System.out.println("   Parallel (" + parallelism + " workers): " + 
+                              String.format("%.1f", steps / (parallelNanos / 1e9)) + " steps/sec");
+            System.out.println("   Bit-identical results: " + sequential.hasSameState(parallel));
+        }
+    }
+    
+    private static long timeSteps(ParticleIntegrator integrator, ParticleStore store, int steps) {
+        for (int i = 0; i < 10; i++) {
+            integrator.step(store); // Warm-up, applied to both stores alike
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            integrator.step(store);
+        }
+        return System.nanoTime() - start;
+    }
+    
+    static ParticleStore populate(int particles) {
+        ParticleFlyweight[] kinds = {
+            ParticleFactory.getParticleType("Fire", "flame.png", "fade"),
+            ParticleFactory.getParticleType("Spark", "spark.png", "linear"),
+            ParticleFactory.getParticleType("Smoke", "smoke.png", "drift")
+        };
+        String[] colors = { "Orange", "Yellow", "Gray" };
+        
+        Random random = new Random(42);
+        ParticleStore store = new ParticleStore(particles);
+        for (int i = 0; i < particles; i++) {
+            int kind = i % kinds.length;
+            store.addParticle(random.nextDouble() * 100, random.nextDouble() * 100, 
+                              random.nextDouble() - 0.5, random.nextDouble() - 0.5, 
+                              colors[kind], 1.0 + kind, kinds[kind]);
+        }
+        return store;
+    }
+}
+
+// Compares per-glyph println rendering with the batched GlyphRenderer
+class RenderBenchmark {
+    public static void compare(Document document, int iterations) {
+        int glyphs = document.getCharacterCount() * iterations;
+        GlyphRenderer renderer = new GlyphRenderer(Writer.nullWriter(), GlyphRenderer.FlushPolicy.PAGE);
+        
+        // Warm both paths up first so neither is measured while still interpreted
+        timePrintln(document, iterations);
+        timeBatched(document, iterations, renderer);
+        
+        long printlnNanos = timePrintln(document, iterations);
+        long flushesBefore = renderer.getFlushCount();
+        long batchedNanos = timeBatched(document, iterations, renderer);
+        
+        System.out.println("⏱️  Rendering " + glyphs + " glyphs:");
+        System.out.println("   println per glyph: " + glyphsPerSecond(glyphs, printlnNanos) + " glyphs/sec");
+        System.out.println("   batched renderer:  " + glyphsPerSecond(glyphs, batchedNanos) + " glyphs/sec" + 
+                          " (" + (renderer.getFlushCount() - flushesBefore) + " flushes)");
+        System.out.println("   Speed-up: " + String.format("%.1fx", printlnNanos / (double) batchedNanos));
+    }
+    
+    // Before: every glyph builds a String and calls System.out.println
+    private static long timePrintln(Document document, int iterations) {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < iterations; i++) {
+                document.forEachGlyph((flyweight, row, column, font, size, color) -> 
+                    flyweight.display(row, column, font, size, color));
+            }
+        } finally {
+            System.setOut(console);
+        }
+        return System.nanoTime() - start;
+    }
+    
+    // After: glyphs are appended into one reusable buffer, flushed per page
+    private static long timeBatched(Document document, int iterations, GlyphRenderer renderer) {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            document.display(renderer);
+        }
+        return System.nanoTime() - start;
+    }
+    
+    private static long glyphsPerSecond(int glyphs, long nanos) {
+        return (long) (glyphs / (nanos / 1_000_000_000.0));
+    }
+}
+
+// Result of walking an object graph: bytes and objects actually reachable from the root,
+// plus how often each object at the measurement boundary was referenced
+class HeapMeasurement {
+    private final long bytes;
+    private final long objects;
+    private final Map<Object, Integer> boundaryReferences;
+    
+    HeapMeasurement(long bytes, long objects, Map<Object, Integer> boundaryReferences) {
+        this.bytes = bytes;
+        this.objects = objects;
+        this.boundaryReferences = boundaryReferences;
+    }
+    
+    public long getBytes() { return bytes; }
+    public long getObjects() { return objects; }
+    public Map<Object, Integer> getBoundaryReferences() { return boundaryReferences; }
+}
+
+// Measures real heap footprint using the running JVM's object layout (header size,
+// field offsets, reference width, alignment) instead of hard-coded estimates
+class ObjectSizer {
+    private static final Object UNSAFE;
+    private static final java.lang.reflect.Method OBJECT_FIELD_OFFSET;
+    private static final java.lang.reflect.Method GET_OBJECT;
+    private static final java.lang.reflect.Method ARRAY_BASE_OFFSET;
+    private static final java.lang.reflect.Method ARRAY_INDEX_SCALE;
+    private static final int REFERENCE_SIZE;
+    private static final int OBJECT_HEADER;
+    private static final int ALIGNMENT;
+    
+    private static final Map<Class<?>, long[]> referenceOffsets = new ConcurrentHashMap<>();
+    private static final Map<Class<?>, Long> shallowSizes = new ConcurrentHashMap<>();
+    
+    // First field of a one-field class starts right after the object header
+    private static class HeaderProbe {
+        @SuppressWarnings("unused")
+        byte probe;
+    }
+    
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            java.lang.reflect.Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            UNSAFE = theUnsafe.get(null);
+            OBJECT_FIELD_OFFSET = unsafeClass.getMethod("objectFieldOffset", java.lang.reflect.Field.class);
+            GET_OBJECT = unsafeClass.getMethod("getObject", Object.class, long.class);
+            ARRAY_BASE_OFFSET = unsafeClass.getMethod("arrayBaseOffset", Class.class);
+            ARRAY_INDEX_SCALE = unsafeClass.getMethod("arrayIndexScale", Class.class);
+            REFERENCE_SIZE = (int) ARRAY_INDEX_SCALE.invoke(UNSAFE, Object[].class);
+            OBJECT_HEADER = (int) (long) OBJECT_FIELD_OFFSET.invoke(UNSAFE, 
+                HeaderProbe.class.getDeclaredField("probe"));
+            ALIGNMENT = readObjectAlignment();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Heap layout introspection is not available on this JVM", e);
+        }
+    }
+    
+    private static int readObjectAlignment() {
+        try {
+            return Integer.parseInt(java.lang.management.ManagementFactory
+                .getPlatformMXBean(com.sun.management.HotSpotDiagnosticMXBean.class)
+                .getVMOption("ObjectAlignmentInBytes").getValue());
+        } catch (RuntimeException e) {
+            return 8; // HotSpot default
+        }
+    }
+    
+    public static long deepSize(Object root) {
+        return measure(root, object -> false).getBytes();
+    }
+    
+    // Walks everything reachable from root; objects matching boundary are neither
+    // counted nor entered, only tallied as referenced (e.g. shared flyweights)
+    public static HeapMeasurement measure(Object root, java.util.function.Predicate<Object> boundary) {
+        Map<Object, Boolean> visited = new IdentityHashMap<>();
+        Map<Object, Integer> boundaryReferences = new IdentityHashMap<>();
+        Deque<Object> pending = new ArrayDeque<>();
+        long bytes = 0;
+        long objects = 0;
+        
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Object current = pending.pop();
+            if (boundary.test(current)) {
+                boundaryReferences.merge(current, 1, Integer::sum);
+                continue;
+            }
+            if (visited.put(current, Boolean.TRUE) != null || isShared(current)) {
+                continue;
+            }
+            
+            bytes += shallowSize(current);
+            objects++;
+            
+            Class<?> type = current.getClass();
+            if (current instanceof Reference) {
+                continue; // Weakly/softly held referents are not retained by this graph
+            }
+            if (type.isArray()) {
+                if (!type.getComponentType().isPrimitive()) {
+                    for (Object element : (Object[]) current) {
+                        if (element != null) {
+                            pending.push(element);
+                        }
+                    }
+                }
+            } else {
+                for (long offset : referenceOffsets(type)) {
+                    Object referenced = invoke(GET_OBJECT, current, offset);
+                    if (referenced != null) {
+                        pending.push(referenced);
+                    }
+                }
+            }
+        }
+        
+        return new HeapMeasurement(bytes, objects, boundaryReferences);
+    }
+    
+    public static long shallowSize(Object object) {
+        Class<?> type = object.getClass();
+        if (type.isArray()) {
+            long base = (int) invoke(ARRAY_BASE_OFFSET, type);
+            long scale = (int) invoke(ARRAY_INDEX_SCALE, type);
+            return align(base + scale * java.lang.reflect.Array.getLength(object));
+        }
+        return shallowSizes.computeIfAbsent(type, ObjectSizer::computeShallowSize);
+    }
+    
+    // Class metadata, threads and enum constants belong to the runtime, not to the graph
+    private static boolean isShared(Object object) {
+        return object instanceof Class || object instanceof ClassLoader || 
+               object instanceof Thread || object instanceof Enum || 
+               object.getClass().isHidden();
     }
     
-    public static void simulateWithFlyweight(int characterCount, int uniqueCharacters) {
-        System.out.println("\n💾 Memory simulation WITH Flyweight:");
-        System.out.println("   Characters: " + characterCount);
-        System.out.println("   Unique flyweights: " + uniqueCharacters);
-        System.out.println("   Memory per flyweight: ~32 bytes");
-        System.out.println("   Memory per context: ~32 bytes");
-        int totalMemory = (uniqueCharacters * 32) + (characterCount * 32);
-        System.out.println("   Total memory: ~" + totalMemory + " bytes");
+    private static long computeShallowSize(Class<?> type) {
+        long end = OBJECT_HEADER;
+        for (java.lang.reflect.Field field : instanceFields(type)) {
+            long offset = (long) invoke(OBJECT_FIELD_OFFSET, field);
+            end = Math.max(end, offset + fieldSize(field.getType()));
+        }
+        return align(end);
+    }
+    
+    private static long[] referenceOffsets(Class<?> type) {
+        return referenceOffsets.computeIfAbsent(type, t -> instanceFields(t).stream()
+            .filter(field -> !field.getType().isPrimitive())
+            .mapToLong(field -> (long) invoke(OBJECT_FIELD_OFFSET, field))
+            .toArray());
+    }
+    
+    private static List<java.lang.reflect.Field> instanceFields(Class<?> type) {
+        List<java.lang.reflect.Field> fields = new ArrayList<>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (java.lang.reflect.Field field : c.getDeclaredFields()) {
+                if (!java.lang.reflect.Modifier.isStatic(field.getModifiers())) {
+                    fields.add(field);
+                }
+            }
+        }
+        return fields;
+    }
+    
+    private static int fieldSize(Class<?> type) {
+        if (type == long.class || type == double.class) return 8;
+        if (type == int.class || type == float.class) return 4;
+        if (type == short.class || type == char.class) return 2;
+        if (type == byte.class || type == boolean.class) return 1;
+        return REFERENCE_SIZE;
+    }
+    
+    private static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+    
+    private static Object invoke(java.lang.reflect.Method method, Object... args) {
+        try {
+            return method.invoke(UNSAFE, args);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Heap layout introspection failed", e);
+        }
+    }
+    
+    public static String describeLayout() {
+        return OBJECT_HEADER + "-byte headers, " + REFERENCE_SIZE + "-byte references, " + 
+               ALIGNMENT + "-byte alignment";
+    }
+}
+
+// Reports measured retained heap for documents, particle systems and flyweight pools
+class MemoryProfiler {
+    // Compares the real layout against one where every element owns a private copy
+    // of its flyweight: measured contexts plus each referenced flyweight's measured
+    // size, once per reference instead of once overall
+    public static void compare(String label, Object root, int elementCount, Class<?> flyweightType) {
+        HeapMeasurement shared = ObjectSizer.measure(root, flyweightType::isInstance);
+        
+        long flyweightBytes = 0;
+        long unsharedFlyweightBytes = 0;
+        for (Map.Entry<Object, Integer> entry : shared.getBoundaryReferences().entrySet()) {
+            long size = ObjectSizer.deepSize(entry.getKey());
+            flyweightBytes += size;
+            unsharedFlyweightBytes += size * entry.getValue();
+        }
+        
+        long withFlyweight = shared.getBytes() + flyweightBytes;
+        long withoutFlyweight = shared.getBytes() + unsharedFlyweightBytes;
         
-        int savedMemory = (characterCount * 64) - totalMemory;
-        System.out.println("   Memory saved: ~" + savedMemory + " bytes (" + 
-                          String.format("%.1f", (savedMemory / (double)(characterCount * 64)) * 100) + "%)");
+        System.out.println("\n💾 Measured memory: " + label);
+        System.out.println("   Elements: " + elementCount);
+        System.out.println("   Shared flyweights referenced: " + shared.getBoundaryReferences().size() + 
+                          " (" + flyweightBytes + " bytes)");
+        System.out.println("   WITH flyweight: " + withFlyweight + " bytes" + perElement(withFlyweight, elementCount));
+        System.out.println("   WITHOUT flyweight: " + withoutFlyweight + " bytes" + perElement(withoutFlyweight, elementCount));
+        if (withoutFlyweight > 0) {
+            long saved = withoutFlyweight - withFlyweight;
+            System.out.println("   Memory saved: " + saved + " bytes (" + 
+                              String.format("%.1f", saved * 100.0 / withoutFlyweight) + "%)");
+        }
+    }
+    
+    public static void measure(String label, Object root, int elementCount) {
+        HeapMeasurement measurement = ObjectSizer.measure(root, object -> false);
+        System.out.println("\n💾 Measured memory: " + label);
+        System.out.println("   Retained: " + measurement.getBytes() + " bytes in " + 
+                          measurement.getObjects() + " objects" + 
+                          perElement(measurement.getBytes(), elementCount));
+    }
+    
+    public static void reportPools() {
+        System.out.println("\n💾 Flyweight pools (" + ObjectSizer.describeLayout() + "):");
+        System.out.println("   CharacterFactory: " + ObjectSizer.deepSize(CharacterFactory.poolRoots()) + 
+                          " bytes for " + CharacterFactory.getFlyweightCount() + " flyweights");
+        System.out.println("   ParticleFactory: " + ObjectSizer.deepSize(ParticleFactory.poolRoots()) + 
+                          " bytes for " + ParticleFactory.getParticleTypeCount() + " particle types");
+    }
+    
+    private static String perElement(long bytes, int elementCount) {
+        return elementCount == 0 ? "" : String.format(" (%.1f bytes each)", bytes / (double) elementCount);
     }
 }
 
@@ -360,10 +2105,12 @@ public class FlyweightDemo {
         System.out.println("=".repeat(50));
         
         int totalCharacters = doc1.getCharacterCount() + doc2.getCharacterCount();
-        int uniqueCharacters = CharacterFactory.getFlyweightCount();
         
-        MemorySimulator.simulateWithoutFlyweight(totalCharacters);
-        MemorySimulator.simulateWithFlyweight(totalCharacters, uniqueCharacters);
+        MemoryProfiler.compare("Sample Documents 1 + 2", List.of(doc1, doc2), totalCharacters, 
+                               CharacterFlyweight.class);
+        MemoryProfiler.compare("Explosion particle system", explosionSystem, 
+                               explosionSystem.getParticleCount(), ParticleFlyweight.class);
+        MemoryProfiler.reportPools();
         
         // 4. Large Scale Demo
         System.out.println("\n\n4. Large Scale Flyweight Benefits:");
@@ -391,8 +2138,8 @@ public class FlyweightDemo {
         System.out.println("   Unique flyweights needed: " + CharacterFactory.getFlyweightCount());
         
         // Memory comparison for large scale
-        MemorySimulator.simulateWithoutFlyweight(largeDoc.getCharacterCount());
-        MemorySimulator.simulateWithFlyweight(largeDoc.getCharacterCount(), CharacterFactory.getFlyweightCount());
+        MemoryProfiler.compare("Large Document", largeDoc, largeDoc.getCharacterCount(), 
+                               CharacterFlyweight.class);
         
         // 5. Demonstrate intrinsic vs extrinsic state
         System.out.println("\n\n5. Intrinsic vs Extrinsic State Demo:");
@@ -408,6 +2155,244 @@ public class FlyweightDemo {
         System.out.println("\n📝 Intrinsic state (stored in flyweight): character = 'A'");
         System.out.println("📝 Extrinsic state (passed as parameters): position, font, size, color");
         
+        // 6. Concurrent flyweight lookups
+        System.out.println("\n\n6. Concurrent Flyweight Pool:");
+        System.out.println("=".repeat(50));
+        
+        String sharedText = "0123456789 +-*/= 🚀🌍";
+        int threadCount = 8;
+        int createdBefore = CharacterFactory.getCreationCount();
+        CharacterFlyweight[][] seen = new CharacterFlyweight[threadCount][];
+        CountDownLatch startSignal = new CountDownLatch(1);
+        Thread[] renderers = new Thread[threadCount];
+        
+        for (int t = 0; t < threadCount; t++) {
+            final int slot = t;
+            renderers[t] = new Thread(() -> {
+                int[] codePoints = sharedText.codePoints().toArray();
+                seen[slot] = new CharacterFlyweight[codePoints.length];
+                try {
+                    startSignal.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < codePoints.length; i++) {
+                    seen[slot][i] = CharacterFactory.getCharacter(codePoints[i]);
+                }
+            });
+            renderers[t].start();
+        }
+        
+        startSignal.countDown();
+        for (Thread renderer : renderers) {
+            try {
+                renderer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        boolean allShared = true;
+        for (int t = 1; t < threadCount; t++) {
+            for (int i = 0; i < seen[0].length; i++) {
+                allShared &= seen[t][i] == seen[0][i];
+            }
+        }
+        
+        System.out.println("🧵 " + threadCount + " threads looked up \"" + sharedText + "\" simultaneously");
+        System.out.println("   Every thread received the same instances: " + allShared);
+        System.out.println("   New flyweights created: " + (CharacterFactory.getCreationCount() - createdBefore));
+        CharacterFactory.showStatistics();
+        
+        // 7. Columnar document storage
+        System.out.println("\n\n7. Columnar Document Storage:");
+        System.out.println("=".repeat(50));
+        
+        Document columnarDoc = new Document("Large Document (columnar)", new ColumnarGlyphStore());
+        for (int i = 0; i < 50; i++) {
+            for (String sentence : sentences) {
+                columnarDoc.addText(sentence, i * 3 + 1, 1, "Arial", 12, "Black");
+            }
+        }
+        
+        StringBuilder objectGlyphs = new StringBuilder();
+        StringBuilder columnarGlyphs = new StringBuilder();
+        largeDoc.forEachGlyph((flyweight, row, column, font, size, color) -> 
+            objectGlyphs.appendCodePoint(flyweight.getCodePoint()).append(row).append(column)
+                        .append(font).append(size).append(color));
+        columnarDoc.forEachGlyph((flyweight, row, column, font, size, color) -> 
+            columnarGlyphs.appendCodePoint(flyweight.getCodePoint()).append(row).append(column)
+                          .append(font).append(size).append(color));
+        
+        largeDoc.showMemoryUsage();
+        columnarDoc.showMemoryUsage();
+        System.out.println("   Same glyphs, positions and styles as object layout: " + 
+                          objectGlyphs.toString().equals(columnarGlyphs.toString()));
+        MemoryProfiler.measure("Large Document (columnar)", columnarDoc, columnarDoc.getCharacterCount());
+        
+        // 8. Run-length style spans
+        System.out.println("\n\n8. Run-Length Style Spans:");
+        System.out.println("=".repeat(50));
+        
+        ColumnarGlyphStore spanStore = new ColumnarGlyphStore();
+        Document styledDoc = new Document("Styled Note", spanStore);
+        styledDoc.addText("Flyweights save memory", 1, 1, "Arial", 12, "Black");
+        System.out.println("🎨 After addText: " + spanStore.getLayoutDescription());
+        
+        styledDoc.applyStyle(11, 15, "Arial", 12, "Red"); // Highlight "save"
+        System.out.println("🎨 After highlighting \"save\": " + spanStore.getLayoutDescription());
+        
+        styledDoc.applyStyle(11, 15, "Arial", 12, "Black"); // Undo - spans merge back
+        System.out.println("🎨 After removing highlight: " + spanStore.getLayoutDescription());
+        
+        styledDoc.display();
+        
+        // 9. Batched rendering
+        System.out.println("\n\n9. Batched Rendering Throughput:");
+        System.out.println("=".repeat(50));
+        
+        RenderBenchmark.compare(columnarDoc, 20);
+        
+        // 10. Data-oriented particle store
+        System.out.println("\n\n10. Data-Oriented Particle Store:");
+        System.out.println("=".repeat(50));
+        
+        ParticleStore sparks = new ParticleStore(4);
+        for (int i = 0; i < 4; i++) {
+            sparks.addParticle(50, 50, i - 1.5, 1.0, "Yellow", 2.0, "Spark", "spark.png", "linear");
+        }
+        sparks.step();
+        sparks.step();
+        System.out.println("🎆 Rendering after two integration steps:");
+        sparks.render();
+        
+        MemoryProfiler.measure("Particle store", sparks, sparks.size());
+        ParticleBenchmark.run(1_000_000, 100);
+        
+        // 11. Parallel particle integration
+        System.out.println("\n\n11. Parallel Particle Integration:");
+        System.out.println("=".repeat(50));
+        
+        int workers = Math.max(2, Runtime.getRuntime().availableProcessors());
+        ParticleBenchmark.compareParallel(1_000_000, 100, workers);
+        
+        try (ParticleIntegrator integrator = new ParticleIntegrator(workers, 2)) {
+            ParticleStore fromSequential = ParticleBenchmark.populate(8);
+            ParticleStore fromParallel = ParticleBenchmark.populate(8);
+            fromSequential.step();
+            integrator.step(fromParallel);
+            
+            StringBuilder expected = new StringBuilder();
+            fromSequential.render(expected, 0, fromSequential.size());
+            ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+            integrator.render(fromParallel, new PrintStream(rendered, true, StandardCharsets.UTF_8));
+            System.out.println("🎆 Parallel render matches sequential order: " + 
+                              expected.toString().equals(rendered.toString(StandardCharsets.UTF_8)));
+            
+            explosionSystem.setIntegrator(integrator);
+            try {
+                explosionSystem.update();
+            } finally {
+                explosionSystem.setIntegrator(null); // The pool shuts down with this block
+            }
+        }
+        
+        // 12. Structured particle type keys
+        System.out.println("\n\n12. Structured Particle Type Keys:");
+        System.out.println("=".repeat(50));
+        
+        ParticleFlyweight glow = ParticleFactory.getParticleType("Glow_soft", "orb.png", "pulse");
+        ParticleFlyweight softGlow = ParticleFactory.getParticleType("Glow", "soft_orb.png", "pulse");
+        System.out.println("🔑 \"Glow_soft\"/\"orb.png\" and \"Glow\"/\"soft_orb.png\" are distinct types: " + 
+                          (glow != softGlow));
+        
+        // Resolve the handle once, then add particles without any per-call lookup
+        ParticleTypeKey emberKey = new ParticleTypeKey("Ember", "ember.png", "rise");
+        ParticleFlyweight ember = ParticleFactory.getParticleType(emberKey);
+        ParticleSystem embers = new ParticleSystem("Campfire Embers");
+        for (int i = 0; i < 1000; i++) {
+            embers.addParticle(10, 0, 0.01 * (i % 7), 0.5, "Red", 1.0, ember);
+        }
+        System.out.println("🔑 Same flyweight for repeated key lookups: " + 
+                          (ParticleFactory.getParticleType(emberKey) == ember));
+        embers.showStatistics();
+        
+        // 13. Reference-based pool eviction
+        System.out.println("\n\n13. Weak-Reference Flyweight Pools:");
+        System.out.println("=".repeat(50));
+        
+        CharacterFactory.setPoolMode(PoolMode.WEAK);
+        ParticleFactory.setPoolMode(PoolMode.WEAK);
+        
+        Document greekNote = new Document("Greek Note");
+        greekNote.addText("αβγδε", 1, 1, "Times", 12, "Black");
+        ParticleFactory.getParticleType("Bubble", "bubble.png", "float");
+        System.out.println("🗑️  Greek note and bubble type dropped - collecting garbage...");
+        greekNote = null;
+        for (int i = 0; i < 3 && CharacterFactory.getEvictedCount() < 5; i++) {
+            System.gc();
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        System.out.println("   Character flyweights evicted: " + CharacterFactory.getEvictedCount());
+        System.out.println("   Particle types evicted: " + ParticleFactory.getEvictedCount());
+        
+        System.out.println("🔄 Reopening the Greek note:");
+        Document reopened = new Document("Greek Note (reopened)");
+        reopened.addText("αβγ", 1, 1, "Times", 12, "Black");
+        CharacterFactory.showStatistics();
+        
+        CharacterFactory.setPoolMode(PoolMode.STRONG);
+        ParticleFactory.setPoolMode(PoolMode.STRONG);
+        
+        // 14. Memory-mapped document snapshots
+        System.out.println("\n\n14. Memory-Mapped Document Snapshots:");
+        System.out.println("=".repeat(50));
+        
+        try {
+            Path snapshotFile = Files.createTempFile("styled-note", ".fwds");
+            snapshotFile.toFile().deleteOnExit();
+            DocumentSnapshot.write(styledDoc, snapshotFile);
+            Document mappedNote = DocumentSnapshot.open(snapshotFile);
+            System.out.println("💽 Snapshot of \"" + styledDoc.getName() + "\": " + Files.size(snapshotFile) + " bytes");
+            mappedNote.display();
+            
+            // Rebuilding a big document vs mapping its snapshot
+            String paragraph = String.join("", sentences);
+            long start = System.nanoTime();
+            Document bigDoc = new Document("Big Document", new ColumnarGlyphStore());
+            for (int row = 1; bigDoc.getCharacterCount() < 2_000_000; row++) {
+                bigDoc.addText(paragraph, row, 1, row % 10 == 0 ? "Courier" : "Arial", 12, "Black");
+            }
+            long rebuildNanos = System.nanoTime() - start;
+            
+            Path bigFile = Files.createTempFile("big-document", ".fwds");
+            bigFile.toFile().deleteOnExit();
+            DocumentSnapshot.write(bigDoc, bigFile);
+            
+            start = System.nanoTime();
+            Document mappedBig = DocumentSnapshot.open(bigFile);
+            long openNanos = System.nanoTime() - start;
+            
+            int[] checksum = new int[2];
+            bigDoc.forEachGlyph((flyweight, row, column, font, size, color) -> 
+                checksum[0] = 31 * checksum[0] + flyweight.getCodePoint() + row * 7 + column + font.length());
+            mappedBig.forEachGlyph((flyweight, row, column, font, size, color) -> 
+                checksum[1] = 31 * checksum[1] + flyweight.getCodePoint() + row * 7 + column + font.length());
+            
+            System.out.println("💽 " + mappedBig.getCharacterCount() + " glyphs, " + 
+                              Files.size(bigFile) / 1024 + " KB on disk");
+            System.out.println("   Rebuild with addText: " + rebuildNanos / 1_000_000 + " ms");
+            System.out.println("   Open mapped snapshot: " + String.format("%.2f", openNanos / 1_000_000.0) + " ms");
+            System.out.println("   Mapped glyphs match the original: " + (checksum[0] == checksum[1]));
+        } catch (IOException e) {
+            System.out.println("❌ Snapshot demo failed: " + e.getMessage());
+        }
+        
         System.out.println("\n=== Flyweight Pattern Benefits Demonstrated ===");
         System.out.println("✅ Dramatic memory reduction for repeated objects");
         System.out.println("✅ Separation of intrinsic and extrinsic state");
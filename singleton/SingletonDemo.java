@@ -1,138 +1,2695 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
 // Thread-safe Singleton implementation
 class DatabaseConnection {
     // Volatile ensures visibility across threads
     private static volatile DatabaseConnection instance;
     private String connectionString;
-    private boolean isConnected;
+    private volatile boolean isConnected; // Read by async executor threads
+    private volatile AsyncState asyncState = new AsyncState(
+            new SyntheticQueryBackend(Duration.ofMillis(2), Duration.ofMillis(1)), 64, 16);
+    
+    // Private constructor prevents external instantiation
+    private DatabaseConnection() {
+        // Simulate expensive connection setup
+        try {
+            Thread.sleep(100); // Simulate connection delay
+            this.connectionString = "jdbc:mysql://localhost:3306/mydb";
+            this.isConnected = true;
+            System.out.println("Database connection established: " + connectionString);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    // Double-checked locking for thread safety
+    public static DatabaseConnection getInstance() {
+        if (instance == null) {
+            synchronized (DatabaseConnection.class) {
+                if (instance == null) {
+                    instance = new DatabaseConnection();
+                }
+            }
+        }
+        return instance;
+    }
+    
+    public void executeQuery(String query) {
+        if (!isConnected) {
+            throw new IllegalStateException("Database not connected");
+        }
+        System.out.println("Executing query: " + query);
+    }
+    
+    // Runs the query on the calling thread through the configured backend, without console output
+    public QueryResult query(String query) {
+        if (!isConnected) {
+            throw new IllegalStateException("Database not connected");
+        }
+        return asyncState.backend.execute(query);
+    }
+    
+    // Non-blocking variant - the caller's thread only blocks when maxInFlight requests are
+    // already outstanding, which is the backpressure signal
+    public CompletableFuture<QueryResult> executeQueryAsync(String query) {
+        if (!isConnected) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database not connected"));
+        }
+        AsyncState state = asyncState;
+        try {
+            state.inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> state.backend.execute(query), state.executor)
+                    .whenComplete((result, error) -> state.inFlight.release());
+        } catch (RejectedExecutionException e) {
+            state.inFlight.release();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    // Sends the queries back to back, one round trip per chunk of at most maxInFlight queries.
+    // Every query holds an in-flight permit until its chunk completes, so a large batch blocks
+    // the caller between chunks rather than exceeding the limit
+    public CompletableFuture<List<QueryResult>> executePipelined(List<String> queries) {
+        if (!isConnected) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Database not connected"));
+        }
+        AsyncState state = asyncState;
+        List<CompletableFuture<List<QueryResult>>> chunks = new ArrayList<>();
+        for (int from = 0; from < queries.size(); from += state.maxInFlight) {
+            List<String> chunk = List.copyOf(queries.subList(from, Math.min(queries.size(), from + state.maxInFlight)));
+            CompletableFuture<List<QueryResult>> sent = sendBatch(state, chunk);
+            chunks.add(sent);
+            if (sent.isCompletedExceptionally()) {
+                break; // Interrupted or rejected - send nothing further
+            }
+        }
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<QueryResult> results = new ArrayList<>(queries.size());
+            for (CompletableFuture<List<QueryResult>> chunk : chunks) {
+                results.addAll(chunk.join());
+            }
+            return results;
+        });
+    }
+    
+    private static CompletableFuture<List<QueryResult>> sendBatch(AsyncState state, List<String> batch) {
+        int permits = batch.size();
+        try {
+            state.inFlight.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> state.backend.executeBatch(batch), state.executor)
+                    .whenComplete((result, error) -> state.inFlight.release(permits));
+        } catch (RejectedExecutionException e) {
+            state.inFlight.release(permits);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+    
+    // Swaps the backend and executor used by the async API; requests already submitted finish
+    // on the previous executor
+    public void configureAsync(QueryBackend backend, int maxInFlight, int executorThreads) {
+        AsyncState previous;
+        synchronized (this) {
+            previous = asyncState;
+            asyncState = new AsyncState(backend, maxInFlight, executorThreads);
+        }
+        previous.executor.shutdown();
+    }
+    
+    public int getInFlightCount() {
+        AsyncState state = asyncState;
+        return state.maxInFlight - state.inFlight.availablePermits();
+    }
+    
+    public int getMaxInFlight() {
+        return asyncState.maxInFlight;
+    }
+    
+    public String getExecutorDescription() {
+        return asyncState.executorDescription;
+    }
+    
+    public String getConnectionString() {
+        return connectionString;
+    }
+    
+    public void disconnect() {
+        isConnected = false;
+        asyncState.executor.shutdown();
+        System.out.println("Database connection closed");
+    }
+    
+    // Backend, executor and in-flight limit are replaced together so a request never mixes them
+    private static final class AsyncState {
+        final QueryBackend backend;
+        final int maxInFlight;
+        final Semaphore inFlight;
+        final ExecutorService executor;
+        final String executorDescription;
+        
+        AsyncState(QueryBackend backend, int maxInFlight, int executorThreads) {
+            this.backend = backend;
+            this.maxInFlight = maxInFlight;
+            this.inFlight = new Semaphore(maxInFlight);
+            ExecutorService virtual = VirtualThreads.newPerTaskExecutor();
+            if (virtual != null) {
+                this.executor = virtual;
+                this.executorDescription = "virtual threads";
+            } else {
+                this.executor = Executors.newFixedThreadPool(executorThreads, runnable -> {
+                    Thread thread = new Thread(runnable, "db-async-query");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                this.executorDescription = executorThreads + " platform threads";
+            }
+        }
+    }
+    
+    // Prevent cloning
+    @Override
+    protected Object clone() throws CloneNotSupportedException {
+        throw new CloneNotSupportedException("Singleton cannot be cloned");
+    }
+}
+
+// Virtual threads are looked up reflectively so the demo still compiles and runs on JDKs without them
+class VirtualThreads {
+    private VirtualThreads() {}
+    
+    // Returns null when the running JDK has no (or only preview) virtual threads
+    static ExecutorService newPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+    
+    static boolean isAvailable() {
+        ExecutorService executor = newPerTaskExecutor();
+        if (executor == null) {
+            return false;
+        }
+        executor.shutdown();
+        return true;
+    }
+}
+
+// Outcome of one query sent through the async API
+class QueryResult {
+    private final String query;
+    private final int rows;
+    private final long latencyNanos;
+    
+    QueryResult(String query, int rows, long latencyNanos) {
+        this.query = query;
+        this.rows = rows;
+        this.latencyNanos = latencyNanos;
+    }
+    
+    public String getQuery() { return query; }
+    public int getRows() { return rows; }
+    public long getLatencyNanos() { return latencyNanos; }
+    
+    @Override
+    public String toString() {
+        return query + " -> " + rows + " rows in " + String.format("%.1f", latencyNanos / 1_000_000.0) + " ms";
+    }
+}
+
+// Whatever actually answers queries; executeBatch sends several requests in one round trip
+interface QueryBackend {
+    QueryResult execute(String query);
+    
+    default List<QueryResult> executeBatch(List<String> queries) {
+        List<QueryResult> results = new ArrayList<>(queries.size());
+        for (String query : queries) {
+            results.add(execute(query));
+        }
+        return results;
+    }
+}
+
+// Local stand-in for a database server: every request pays a network round trip, and the
+// server side work of one connection is processed one query at a time
+class SyntheticQueryBackend implements QueryBackend {
+    private final long roundTripNanos;
+    private final long serviceNanos;
+    // A ReentrantLock rather than a monitor: parking inside synchronized pins a virtual thread's
+    // carrier on JDK 21, and the load generator would measure pinning instead of the backend
+    private final java.util.concurrent.locks.ReentrantLock serverLock = 
+            new java.util.concurrent.locks.ReentrantLock();
+    
+    SyntheticQueryBackend(Duration roundTrip, Duration serviceTime) {
+        this.roundTripNanos = roundTrip.toNanos();
+        this.serviceNanos = serviceTime.toNanos();
+    }
+    
+    @Override
+    public QueryResult execute(String query) {
+        long start = System.nanoTime();
+        pause(roundTripNanos / 2);
+        int rows = serve(query);
+        pause(roundTripNanos - roundTripNanos / 2);
+        return new QueryResult(query, rows, System.nanoTime() - start);
+    }
+    
+    @Override
+    public List<QueryResult> executeBatch(List<String> queries) {
+        long start = System.nanoTime();
+        pause(roundTripNanos / 2);
+        int[] rows = new int[queries.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = serve(queries.get(i));
+        }
+        pause(roundTripNanos - roundTripNanos / 2);
+        long latency = System.nanoTime() - start;
+        List<QueryResult> results = new ArrayList<>(rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            results.add(new QueryResult(queries.get(i), rows[i], latency));
+        }
+        return results;
+    }
+    
+    private int serve(String query) {
+        serverLock.lock();
+        try {
+            pause(serviceNanos);
+        } finally {
+            serverLock.unlock();
+        }
+        return Math.floorMod(query.hashCode(), 100);
+    }
+    
+    // parkNanos can return early, so keep parking until the deadline has passed
+    static void pause(long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        for (long remaining = nanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            java.util.concurrent.locks.LockSupport.parkNanos(remaining);
+        }
+    }
+}
+
+// Compares blocking, async and pipelined query submission against the same backend
+class AsyncQueryBenchmark {
+    public static void run(int queries, int pipelineDepth) {
+        DatabaseConnection db = DatabaseConnection.getInstance();
+        QueryBackend backend = new SyntheticQueryBackend(Duration.ofMillis(2), Duration.ofNanos(200_000));
+        
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            backend.execute("SELECT * FROM orders WHERE id = " + i);
+        }
+        report("Blocking, one at a time", queries, System.nanoTime() - start);
+        
+        db.configureAsync(backend, 32, 32);
+        start = System.nanoTime();
+        List<CompletableFuture<QueryResult>> pending = new ArrayList<>(queries);
+        for (int i = 0; i < queries; i++) {
+            pending.add(db.executeQueryAsync("SELECT * FROM orders WHERE id = " + i));
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+        report("Async, " + db.getMaxInFlight() + " in flight", queries, System.nanoTime() - start);
+        
+        start = System.nanoTime();
+        List<CompletableFuture<List<QueryResult>>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>(pipelineDepth);
+        for (int i = 0; i < queries; i++) {
+            batch.add("SELECT * FROM orders WHERE id = " + i);
+            if (batch.size() == pipelineDepth || i == queries - 1) {
+                batches.add(db.executePipelined(batch));
+                batch.clear();
+            }
+        }
+        CompletableFuture.allOf(batches.toArray(new CompletableFuture<?>[0])).join();
+        report("Async, pipelined x" + pipelineDepth, queries, System.nanoTime() - start);
+        System.out.println("Executor: " + db.getExecutorDescription());
+    }
+    
+    private static void report(String label, int queries, long nanos) {
+        System.out.printf("%-28s %6.0f ms, %,8.0f queries/sec%n", 
+                          label + ":", nanos / 1_000_000.0, queries / (nanos / 1e9));
+    }
+}
+
+// Enum-based Singleton (Joshua Bloch's approach)
+// Callers only claim a slot in a preallocated ring buffer; a background thread formats the
+// events and writes them in batches through a FileChannel, or as binary records (see BinaryLogWriter).
+// Console output goes through System.out, but later - call flush() before printing directly if the
+// two must appear in order
+enum Logger {
+    INSTANCE;
+    
+    enum Level { TRACE, DEBUG, INFO, WARN, ERROR }
+    
+    private static final Level[] LEVELS = Level.values();
+    private static final int CAPACITY = 1 << 14; // Power of two so slots are found with a mask
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_BATCH_EVENTS = 1024; // Per drain pass, so written advances under steady load
+    private static final int INLINE_ARGS = 4;
+    private static final String MESSAGE_TEMPLATE = "{}"; // Plain messages are one string argument
+    private static final long WAIT_PARK_NANOS = 100_000; // Producers and flush() re-check this often
+    private static final long FLUSH_STALL_NANOS = 5_000_000_000L; // flush() fails after this long without progress
+    
+    // Preallocated and reused; a slot is readable once its sequence is one past its position
+    private static final class LogEvent {
+        volatile long sequence;
+        long timestampMillis;
+        int level;
+        String template;
+        final Object[] inlineArgs = new Object[INLINE_ARGS];
+        Object[] args; // inlineArgs, or the caller's varargs array when it has more
+        int argCount;
+        
+        void clear() {
+            template = null;
+            Arrays.fill(inlineArgs, null);
+            args = null;
+        }
+    }
+    
+    private final LogEvent[] ring = new LogEvent[CAPACITY];
+    private final AtomicLong claimed = new AtomicLong(); // Next position producers will claim
+    private long consumed; // Next position the consumer reads - consumer thread only
+    private volatile long written; // Every event before this position has reached the channel
+    private volatile int threshold = Level.INFO.ordinal();
+    private final Object outputLock = new Object(); // Held by the consumer while it writes a batch
+    private WritableByteChannel channel;
+    private boolean ownsChannel;
+    private int bufferedEvents; // Events with bytes still in writeBuffer - consumer thread only
+    private BinaryLogWriter binaryWriter; // Non-null while binary output is enabled
+    private final Thread consumer;
+    private final LongAdder producerWaits = new LongAdder();
+    private final LongAdder failedEvents = new LongAdder();
+    
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final StringBuilder formatBuffer = new StringBuilder(256);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final byte[][] levelPrefixes = new byte[Level.values().length][];
+    
+    Logger() {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new LogEvent();
+            ring[i].sequence = i;
+        }
+        for (Level level : Level.values()) {
+            levelPrefixes[level.ordinal()] = ("[" + level + "] ").getBytes(StandardCharsets.UTF_8);
+        }
+        channel = new ConsoleChannel(System.out);
+        consumer = new Thread(this::drainLoop, "async-logger");
+        consumer.setDaemon(true);
+        consumer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushOnExit, "async-logger-flush"));
+    }
+    
+    // Logged at the current level, which is always enabled - matches the original behaviour
+    public void log(String message) {
+        publish(threshold, MESSAGE_TEMPLATE, 1, message, null, null);
+    }
+    
+    public void log(Level level, String message) {
+        if (level.ordinal() >= threshold) {
+            publish(level.ordinal(), MESSAGE_TEMPLATE, 1, message, null, null);
+        }
+    }
+    
+    // The supplier only runs when the level is enabled, so disabled levels build no strings
+    public void log(Level level, java.util.function.Supplier<String> message) {
+        if (level.ordinal() >= threshold) {
+            publish(level.ordinal(), MESSAGE_TEMPLATE, 1, message.get(), null, null);
+        }
+    }
+    
+    // Templated messages: each "{}" is replaced by the next argument, but only on the consumer
+    // thread - binary output never formats them at all
+    public void log(Level level, String template, Object arg) {
+        if (level.ordinal() >= threshold) {
+            publish(level.ordinal(), template, 1, arg, null, null);
+        }
+    }
+    
+    public void log(Level level, String template, Object arg0, Object arg1) {
+        if (level.ordinal() >= threshold) {
+            publish(level.ordinal(), template, 2, arg0, arg1, null);
+        }
+    }
+    
+    public void log(Level level, String template, Object... args) {
+        if (level.ordinal() >= threshold) {
+            publish(level.ordinal(), template, args.length, null, null, args);
+        }
+    }
+    
+    public void debug(java.util.function.Supplier<String> message) { log(Level.DEBUG, message); }
+    public void info(java.util.function.Supplier<String> message) { log(Level.INFO, message); }
+    public void warn(java.util.function.Supplier<String> message) { log(Level.WARN, message); }
+    public void error(java.util.function.Supplier<String> message) { log(Level.ERROR, message); }
+    
+    public boolean isEnabled(Level level) {
+        return level.ordinal() >= threshold;
+    }
+    
+    // Names are matched ignoring case and surrounding spaces; unknown names leave the level unchanged
+    public void setLogLevel(String level) {
+        if (level == null) {
+            return;
+        }
+        String name = level.trim();
+        for (Level candidate : LEVELS) {
+            if (candidate.name().equalsIgnoreCase(name)) {
+                this.threshold = candidate.ordinal();
+                return;
+            }
+        }
+        System.err.println("Unknown log level '" + level + "', keeping " + getLogLevel());
+    }
+    
+    public String getLogLevel() {
+        return LEVELS[threshold].name();
+    }
+    
+    // Multi-producer claim: CAS the claim counter forward once the slot has been consumed
+    private void publish(int level, String template, int argCount, Object arg0, Object arg1, Object[] args) {
+        while (true) {
+            long position = claimed.get();
+            LogEvent event = ring[(int) position & (CAPACITY - 1)];
+            long lag = event.sequence - position;
+            if (lag == 0) {
+                if (claimed.compareAndSet(position, position + 1)) {
+                    event.timestampMillis = System.currentTimeMillis();
+                    event.level = level;
+                    event.template = template;
+                    event.argCount = argCount;
+                    if (args == null) {
+                        event.inlineArgs[0] = arg0;
+                        event.inlineArgs[1] = arg1;
+                        event.args = event.inlineArgs;
+                    } else if (args.length <= INLINE_ARGS) {
+                        System.arraycopy(args, 0, event.inlineArgs, 0, args.length);
+                        event.args = event.inlineArgs;
+                    } else {
+                        event.args = args;
+                    }
+                    event.sequence = position + 1; // Volatile write publishes the fields above
+                    return;
+                }
+            } else if (lag < 0) {
+                // Ring is full - wait for the consumer rather than drop the event
+                producerWaits.increment();
+                awaitConsumer();
+            }
+        }
+    }
+    
+    // Each pass drains at most MAX_BATCH_EVENTS, writes them and publishes written, then lets go of
+    // outputLock - so flush() sees progress and setOutput is not starved while producers keep up
+    private void drainLoop() {
+        while (true) {
+            int drained = 0;
+            synchronized (outputLock) {
+                while (drained < MAX_BATCH_EVENTS) {
+                    LogEvent event = ring[(int) consumed & (CAPACITY - 1)];
+                    if (event.sequence != consumed + 1) {
+                        break;
+                    }
+                    try {
+                        if (binaryWriter != null) {
+                            writeBinary(event);
+                        } else {
+                            encode(event);
+                        }
+                    } catch (RuntimeException e) {
+                        // A bad argument or channel must not stop the consumer - drop this event only
+                        reportFailure("an event", e);
+                    }
+                    event.clear();
+                    event.sequence = consumed + CAPACITY; // Hand the slot back to producers
+                    consumed++;
+                    drained++;
+                }
+                if (writeBuffer.position() > 0) {
+                    writeBatch();
+                }
+                written = consumed;
+            }
+            if (drained == 0) {
+                java.util.concurrent.locks.LockSupport.parkNanos(1_000_000);
+            }
+        }
+    }
+    
+    private void writeBinary(LogEvent event) {
+        try {
+            binaryWriter.write(event.timestampMillis, event.level, event.template, event.args, event.argCount);
+        } catch (IOException e) {
+            System.err.println("Binary log write failed, falling back to text: " + e.getMessage());
+            // Close rather than just drop the writer, so the open segment is truncated and unmapped
+            try {
+                closeBinaryWriter();
+            } catch (RuntimeException closeFailure) {
+                System.err.println("Binary log writer could not be closed: " + closeFailure);
+            }
+            encode(event);
+        }
+    }
+    
+    // "{}" placeholders take the arguments in order; BinaryLogReader decodes messages with it too
+    static void appendFormatted(StringBuilder out, String template, Object[] args, int argCount) {
+        int next = 0;
+        int from = 0;
+        int at;
+        while (next < argCount && (at = template.indexOf("{}", from)) >= 0) {
+            out.append(template, from, at).append(args[next++]);
+            from = at + 2;
+        }
+        out.append(template, from, template.length());
+    }
+    
+    private void reportFailure(String what, RuntimeException e) {
+        failedEvents.increment();
+        System.err.println("Logger dropped " + what + ": " + e);
+    }
+    
+    private void encode(LogEvent event) {
+        // Format first, so an argument whose toString() throws leaves no partial line behind
+        formatBuffer.setLength(0);
+        appendFormatted(formatBuffer, event.template, event.args, event.argCount);
+        byte[] prefix = levelPrefixes[event.level];
+        if (writeBuffer.remaining() < prefix.length + 1) {
+            writeBatch();
+        }
+        bufferedEvents++;
+        writeBuffer.put(prefix);
+        CharBuffer chars = CharBuffer.wrap(formatBuffer);
+        encoder.reset();
+        while (encoder.encode(chars, writeBuffer, true).isOverflow()) {
+            writeBatchMidEvent();
+        }
+        if (!writeBuffer.hasRemaining()) {
+            writeBatchMidEvent();
+        }
+        writeBuffer.put((byte) '\n');
+    }
+    
+    // The rest of the current event goes out with the next batch; if this one failed, the event
+    // has already been counted as dropped
+    private void writeBatchMidEvent() {
+        if (writeBatch()) {
+            bufferedEvents = 1;
+        }
+    }
+    
+    // Every event with bytes in a batch that fails to write is counted in failedEvents
+    private boolean writeBatch() {
+        writeBuffer.flip();
+        try {
+            while (writeBuffer.hasRemaining()) {
+                channel.write(writeBuffer);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            failedEvents.add(bufferedEvents);
+            System.err.println("Logger dropped " + bufferedEvents + " events: " + e);
+            return false;
+        } finally {
+            writeBuffer.clear(); // Also on a failure, so the next batch starts empty
+            bufferedEvents = 0;
+        }
+    }
+    
+    // Blocks until everything logged before this call has been written; throws if the consumer
+    // has died or makes no progress for FLUSH_STALL_NANOS
+    public void flush() {
+        long target = claimed.get();
+        long progress = written;
+        long lastProgressAt = System.nanoTime();
+        while (written < target) {
+            awaitConsumer();
+            if (written != progress) {
+                progress = written;
+                lastProgressAt = System.nanoTime();
+            } else if (System.nanoTime() - lastProgressAt > FLUSH_STALL_NANOS) {
+                throw new IllegalStateException("Logger flush stalled with " + (target - progress) 
+                        + " events unwritten");
+            }
+        }
+    }
+    
+    private void flushOnExit() {
+        try {
+            flush();
+        } catch (IllegalStateException e) {
+            System.err.println("Logger could not flush on exit: " + e.getMessage());
+        }
+    }
+    
+    // Wakes the consumer and parks briefly; fails instead of waiting on a consumer that has died
+    private void awaitConsumer() {
+        if (!consumer.isAlive()) {
+            throw new IllegalStateException("Logger consumer thread has stopped");
+        }
+        java.util.concurrent.locks.LockSupport.unpark(consumer);
+        java.util.concurrent.locks.LockSupport.parkNanos(WAIT_PARK_NANOS);
+    }
+    
+    // Redirects text output to a file, or back to standard output when file is null;
+    // also turns binary output off. Standard output means the System.out of the time of the call
+    public synchronized void setOutput(Path file) throws IOException {
+        flush();
+        WritableByteChannel next = file == null 
+                ? new ConsoleChannel(System.out) 
+                : FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, 
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+        synchronized (outputLock) {
+            closeBinaryWriter();
+            if (ownsChannel) {
+                channel.close();
+            }
+            channel = next;
+            ownsChannel = file != null;
+        }
+    }
+    
+    // Switches to binary records in rolling memory-mapped segments under directory; the oldest
+    // segments are deleted once their total size exceeds diskBudgetBytes
+    public synchronized void setBinaryOutput(Path directory, int segmentBytes, long diskBudgetBytes) 
+            throws IOException {
+        flush();
+        BinaryLogWriter next = new BinaryLogWriter(directory, segmentBytes, diskBudgetBytes);
+        synchronized (outputLock) {
+            closeBinaryWriter();
+            binaryWriter = next;
+        }
+    }
+    
+    // Writes through a PrintStream such as System.out, so log lines never interleave with bytes
+    // still sitting in its buffer. PrintStream swallows IOExceptions, so its error flag is checked
+    // after each write and turned back into one
+    private static final class ConsoleChannel implements WritableByteChannel {
+        private final PrintStream out;
+        private final byte[] chunk = new byte[8192];
+        
+        ConsoleChannel(PrintStream out) {
+            this.out = out;
+        }
+        
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            int length = Math.min(source.remaining(), chunk.length);
+            source.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+            if (out.checkError()) {
+                throw new IOException("standard output reported an error");
+            }
+            return length;
+        }
+        
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+        
+        @Override
+        public void close() {
+            // Standard output belongs to the process, not the logger
+        }
+    }
+    
+    private void closeBinaryWriter() {
+        if (binaryWriter != null) {
+            try {
+                binaryWriter.close();
+            } finally {
+                binaryWriter = null;
+            }
+        }
+    }
+    
+    public long getPublishedCount() {
+        return claimed.get();
+    }
+    
+    public long getProducerWaits() {
+        return producerWaits.sum();
+    }
+    
+    public long getFailedEvents() {
+        return failedEvents.sum();
+    }
+}
+
+// Binary log segment layout, all big-endian:
+//   header: int magic "SLOG", short version, long creation time (epoch millis)
+//   records, each starting with a type byte:
+//     TEMPLATE: int id, short length, UTF-8 bytes - repeated in every segment that uses the id
+//     EVENT:    long timestamp, byte level, int template id, byte argument count, arguments
+//     END:      a zero byte, which is also what the unwritten tail of a mapped segment holds
+//   a segment is truncated to its records when it is rolled or closed, so the end of the file
+//   also ends it; only the open segment (or one left by a crash) still has a zero-filled tail
+//   arguments are a tag byte followed by int, long, double, boolean or length-prefixed UTF-8
+class BinaryLogWriter {
+    static final int MAGIC = 0x534C4F47; // "SLOG"
+    static final short VERSION = 1;
+    static final int HEADER_BYTES = 4 + 2 + 8;
+    static final byte RECORD_END = 0;
+    static final byte RECORD_TEMPLATE = 1;
+    static final byte RECORD_EVENT = 2;
+    static final byte ARG_NULL = 'N';
+    static final byte ARG_INT = 'I';
+    static final byte ARG_LONG = 'J';
+    static final byte ARG_DOUBLE = 'D';
+    static final byte ARG_BOOLEAN = 'Z';
+    static final byte ARG_STRING = 'S';
+    static final int MAX_STRING_BYTES = 8 * 1024; // Longer arguments are truncated
+    static final int MAX_ARGS = 0xFF; // The count is one unsigned byte
+    static final String SEGMENT_PREFIX = "segment-";
+    static final String SEGMENT_SUFFIX = ".slog";
+    
+    private final Path directory;
+    private final int segmentBytes;
+    private final long diskBudgetBytes;
+    private final Map<String, Integer> templateIds = new HashMap<>();
+    private final List<byte[]> templateBytes = new ArrayList<>();
+    private final BitSet definedInSegment = new BitSet();
+    private final Deque<Path> segments = new ArrayDeque<>();
+    private final ByteBuffer scratch = ByteBuffer.allocate(64 * 1024);
+    private MappedByteBuffer segment;
+    private Path segmentPath;
+    private int nextSegmentIndex;
+    private long eventsWritten;
+    private long eventsDropped;
+    private long bytesInClosedSegments;
+    
+    BinaryLogWriter(Path directory, int segmentBytes, long diskBudgetBytes) throws IOException {
+        if (segmentBytes < HEADER_BYTES + 1024) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentBytes);
+        }
+        this.directory = Files.createDirectories(directory);
+        this.segmentBytes = segmentBytes;
+        this.diskBudgetBytes = diskBudgetBytes;
+        // Continue after segments left by an earlier run so they count toward the budget
+        for (Path existing : BinaryLogReader.listSegments(directory)) {
+            segments.addLast(existing);
+            nextSegmentIndex = Math.max(nextSegmentIndex, segmentIndex(existing) + 1);
+        }
+        openSegment();
+    }
+    
+    // Called on the logger's consumer thread only
+    void write(long timestampMillis, int level, String template, Object[] args, int argCount) throws IOException {
+        if (argCount > MAX_ARGS) {
+            eventsDropped++; // A wrapped count would desync every record after this one
+            return;
+        }
+        Integer id = templateIds.get(template);
+        if (id == null) {
+            id = templateBytes.size();
+            templateIds.put(template, id);
+            templateBytes.add(truncatedUtf8(template));
+        }
+        
+        scratch.clear();
+        scratch.put(RECORD_EVENT).putLong(timestampMillis).put((byte) level).putInt(id).put((byte) argCount);
+        for (int i = 0; i < argCount; i++) {
+            if (!putArgument(args[i])) {
+                eventsDropped++; // Arguments too large for one record
+                return;
+            }
+        }
+        scratch.flip();
+        
+        int templateRecord = 1 + 4 + 2 + templateBytes.get(id).length;
+        int needed = scratch.remaining() + templateRecord + 1; // Leave room for the END byte
+        if (needed > segmentBytes - HEADER_BYTES) {
+            eventsDropped++;
+            return;
+        }
+        if (segment.remaining() < needed) {
+            roll();
+        }
+        if (!definedInSegment.get(id)) {
+            byte[] bytes = templateBytes.get(id);
+            segment.put(RECORD_TEMPLATE).putInt(id).putShort((short) bytes.length).put(bytes);
+            definedInSegment.set(id);
+        }
+        segment.put(scratch);
+        eventsWritten++;
+    }
+    
+    private boolean putArgument(Object arg) {
+        try {
+            if (arg == null) {
+                scratch.put(ARG_NULL);
+            } else if (arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+                scratch.put(ARG_INT).putInt(((Number) arg).intValue());
+            } else if (arg instanceof Long) {
+                scratch.put(ARG_LONG).putLong((Long) arg);
+            } else if (arg instanceof Double || arg instanceof Float) {
+                scratch.put(ARG_DOUBLE).putDouble(((Number) arg).doubleValue());
+            } else if (arg instanceof Boolean) {
+                scratch.put(ARG_BOOLEAN).put((byte) ((Boolean) arg ? 1 : 0));
+            } else {
+                putString(String.valueOf(arg));
+            }
+            return true;
+        } catch (BufferOverflowException e) {
+            return false;
+        }
+    }
+    
+    // ASCII is copied char by char without an intermediate byte[]; anything else goes through UTF-8
+    private void putString(String value) {
+        int length = value.length();
+        if (length <= MAX_STRING_BYTES) {
+            int start = scratch.position();
+            scratch.put(ARG_STRING).putShort((short) length);
+            int i = 0;
+            while (i < length) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    break;
+                }
+                scratch.put((byte) c);
+                i++;
+            }
+            if (i == length) {
+                return;
+            }
+            scratch.position(start);
+        }
+        byte[] bytes = truncatedUtf8(value);
+        scratch.put(ARG_STRING).putShort((short) bytes.length).put(bytes);
+    }
+    
+    private static byte[] truncatedUtf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= MAX_STRING_BYTES ? bytes : Arrays.copyOf(bytes, MAX_STRING_BYTES);
+    }
+    
+    private void openSegment() throws IOException {
+        Path path = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, nextSegmentIndex++, SEGMENT_SUFFIX));
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.CREATE_NEW, 
+                                                 StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            segment = file.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+        segment.putInt(MAGIC).putShort(VERSION).putLong(System.currentTimeMillis());
+        segmentPath = path;
+        definedInSegment.clear();
+        segments.addLast(path);
+        enforceDiskBudget();
+    }
+    
+    private void roll() throws IOException {
+        closeSegment();
+        openSegment();
+    }
+    
+    // Gives the unused tail back to the file system, so a closed segment costs only its records
+    private void closeSegment() throws IOException {
+        int used = segment.position();
+        segment.force();
+        segment = null;
+        bytesInClosedSegments += used;
+        try (FileChannel file = FileChannel.open(segmentPath, StandardOpenOption.WRITE)) {
+            file.truncate(used);
+        }
+    }
+    
+    // Counts real file sizes: closed segments are truncated, the open one is mapped at full size
+    private void enforceDiskBudget() throws IOException {
+        long total = 0;
+        for (Path path : segments) {
+            total += sizeOf(path);
+        }
+        while (segments.size() > 1 && total > diskBudgetBytes) {
+            Path oldest = segments.pollFirst();
+            total -= sizeOf(oldest);
+            Files.deleteIfExists(oldest);
+        }
+    }
+    
+    private static long sizeOf(Path path) throws IOException {
+        return Files.exists(path) ? Files.size(path) : 0;
+    }
+    
+    void close() {
+        if (segment != null) {
+            try {
+                closeSegment();
+            } catch (IOException e) {
+                System.err.println("Binary log segment could not be truncated: " + e.getMessage());
+            }
+        }
+    }
+    
+    static int segmentIndex(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+    
+    long getEventsWritten() { return eventsWritten; }
+    long getEventsDropped() { return eventsDropped; }
+    long getBytesWritten() { return bytesInClosedSegments + (segment == null ? 0 : segment.position()); }
+}
+
+// Offline decoder for BinaryLogWriter segments.
+// Usage: java BinaryLogReader <directory> [--level WARN] [--grep text] [--stats]
+class BinaryLogReader {
+    // One decoded event; the message is only formatted when asked for
+    static final class LogRecord {
+        final long timestampMillis;
+        final Logger.Level level;
+        final int templateId;
+        final String template;
+        final Object[] args;
+        
+        LogRecord(long timestampMillis, Logger.Level level, int templateId, String template, Object[] args) {
+            this.timestampMillis = timestampMillis;
+            this.level = level;
+            this.templateId = templateId;
+            this.template = template;
+            this.args = args;
+        }
+        
+        String getMessage() {
+            StringBuilder out = new StringBuilder();
+            Logger.appendFormatted(out, template, args, args.length);
+            return out.toString();
+        }
+        
+        @Override
+        public String toString() {
+            return java.time.Instant.ofEpochMilli(timestampMillis) + " [" + level + "] " + getMessage();
+        }
+    }
+    
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, 
+                BinaryLogWriter.SEGMENT_PREFIX + "*" + BinaryLogWriter.SEGMENT_SUFFIX)) {
+            stream.forEach(segments::add);
+        }
+        segments.sort(Comparator.comparingInt(BinaryLogWriter::segmentIndex));
+        return segments;
+    }
+    
+    // Decodes every segment in order, passing records that match the filter to the sink
+    static long read(Path directory, java.util.function.Predicate<LogRecord> filter, 
+                     java.util.function.Consumer<LogRecord> sink) throws IOException {
+        long matched = 0;
+        for (Path segment : listSegments(directory)) {
+            matched += readSegment(segment, filter, sink);
+        }
+        return matched;
+    }
+    
+    private static long readSegment(Path path, java.util.function.Predicate<LogRecord> filter, 
+                                    java.util.function.Consumer<LogRecord> sink) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+        }
+        if (buffer.remaining() < BinaryLogWriter.HEADER_BYTES || buffer.getInt() != BinaryLogWriter.MAGIC) {
+            throw new IOException("Not a binary log segment: " + path);
+        }
+        short version = buffer.getShort();
+        if (version != BinaryLogWriter.VERSION) {
+            throw new IOException("Unsupported segment version " + version + ": " + path);
+        }
+        buffer.getLong(); // Creation time
+        
+        Map<Integer, String> templates = new HashMap<>();
+        Logger.Level[] levels = Logger.Level.values();
+        long matched = 0;
+        while (buffer.hasRemaining()) {
+            int offset = buffer.position();
+            try {
+                byte type = buffer.get();
+                if (type == BinaryLogWriter.RECORD_END) {
+                    break;
+                } else if (type == BinaryLogWriter.RECORD_TEMPLATE) {
+                    int id = buffer.getInt();
+                    templates.put(id, readString(buffer));
+                } else if (type == BinaryLogWriter.RECORD_EVENT) {
+                    long timestamp = buffer.getLong();
+                    byte levelId = buffer.get();
+                    if (levelId < 0 || levelId >= levels.length) {
+                        throw new IOException("Corrupt level " + levelId + " at offset " + offset + " in " + path);
+                    }
+                    int templateId = buffer.getInt();
+                    String template = templates.get(templateId);
+                    if (template == null) {
+                        throw new IOException("Undefined template " + templateId + " at offset " + offset + 
+                                              " in " + path);
+                    }
+                    Object[] args = new Object[buffer.get() & 0xFF];
+                    for (int i = 0; i < args.length; i++) {
+                        args[i] = readArgument(buffer);
+                    }
+                    LogRecord record = new LogRecord(timestamp, levels[levelId], templateId, template, args);
+                    if (filter.test(record)) {
+                        sink.accept(record);
+                        matched++;
+                    }
+                } else {
+                    throw new IOException("Corrupt record type " + type + " at offset " + offset + " in " + path);
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated record at offset " + offset + " in " + path, e);
+            }
+        }
+        return matched;
+    }
+    
+    private static Object readArgument(ByteBuffer buffer) throws IOException {
+        byte tag = buffer.get();
+        switch (tag) {
+            case BinaryLogWriter.ARG_NULL: return null;
+            case BinaryLogWriter.ARG_INT: return buffer.getInt();
+            case BinaryLogWriter.ARG_LONG: return buffer.getLong();
+            case BinaryLogWriter.ARG_DOUBLE: return buffer.getDouble();
+            case BinaryLogWriter.ARG_BOOLEAN: return buffer.get() != 0;
+            case BinaryLogWriter.ARG_STRING: return readString(buffer);
+            default: throw new IOException("Unknown argument tag " + tag);
+        }
+    }
+    
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java BinaryLogReader <directory> [--level WARN] [--grep text] [--stats]");
+            return;
+        }
+        Path directory = Paths.get(args[0]);
+        Logger.Level minimum = Logger.Level.TRACE;
+        String grep = null;
+        boolean stats = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--level": minimum = Logger.Level.valueOf(args[++i].toUpperCase()); break;
+                case "--grep": grep = args[++i]; break;
+                case "--stats": stats = true; break;
+                default: throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        
+        Logger.Level threshold = minimum;
+        String text = grep;
+        java.util.function.Predicate<LogRecord> filter = record -> record.level.compareTo(threshold) >= 0 && 
+                (text == null || record.getMessage().contains(text));
+        if (stats) {
+            Map<String, Long> perTemplate = new TreeMap<>();
+            long total = read(directory, filter, record -> perTemplate.merge(record.template, 1L, Long::sum));
+            perTemplate.forEach((template, count) -> System.out.printf("%,10d  %s%n", count, template));
+            System.out.printf("%,10d  total%n", total);
+        } else {
+            read(directory, filter, System.out::println);
+        }
+    }
+}
+
+// Measures what a log call costs the calling thread, for enabled and disabled levels
+class LoggerBenchmark {
+    public static void run(int events) throws IOException {
+        Logger logger = Logger.INSTANCE;
+        String previousLevel = logger.getLogLevel();
+        Path file = Files.createTempFile("async-logger", ".log");
+        Path syncFile = Files.createTempFile("sync-logger", ".log");
+        try {
+            logger.setLogLevel("INFO");
+            measure(logger, events, file, syncFile, false); // Warm-up pass so both paths are compiled
+            measure(logger, events, file, syncFile, true);
+            System.out.println("Lines written: " + Files.readAllLines(file).size() + 
+                               ", producer waits on full ring: " + logger.getProducerWaits());
+        } finally {
+            logger.setLogLevel(previousLevel);
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(syncFile);
+        }
+    }
+    
+    private static void measure(Logger logger, int events, Path file, Path syncFile, boolean print) 
+            throws IOException {
+        long start = System.nanoTime();
+        try (PrintStream sync = new PrintStream(new FileOutputStream(syncFile.toFile()), true, "UTF-8")) {
+            for (int i = 0; i < events; i++) {
+                sync.println("[INFO] " + "Processed order " + i);
+            }
+        }
+        report("Synchronous println", events, System.nanoTime() - start, print);
+        
+        logger.setOutput(file);
+        start = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            int order = i;
+            logger.info(() -> "Processed order " + order);
+        }
+        long published = System.nanoTime() - start;
+        logger.flush();
+        long total = System.nanoTime() - start;
+        report("Async, caller side", events, published, print);
+        report("Async, until flushed", events, total, print);
+        
+        start = System.nanoTime();
+        for (int i = 0; i < events; i++) {
+            int order = i;
+            logger.debug(() -> "Processed order " + order);
+        }
+        report("Disabled DEBUG supplier", events, System.nanoTime() - start, print);
+        logger.setOutput(null);
+    }
+    
+    // Same templated events written as formatted text and as binary segments
+    public static void runBinary(int events) throws IOException {
+        Logger logger = Logger.INSTANCE;
+        String previousLevel = logger.getLogLevel();
+        Path textFile = Files.createTempFile("templated-logger", ".log");
+        Path segments = Files.createTempDirectory("binary-logger");
+        try {
+            logger.setLogLevel("INFO");
+            long textBytes = 0;
+            long binaryBytes = 0;
+            for (int round = 0; round < 3; round++) {
+                boolean print = round == 2; // Earlier rounds are warm-up
+                
+                logger.setOutput(textFile);
+                long start = System.nanoTime();
+                logTemplated(logger, events);
+                logger.flush();
+                report("Text, until flushed", events, System.nanoTime() - start, print);
+                textBytes = Files.size(textFile);
+                
+                deleteSegments(segments);
+                logger.setBinaryOutput(segments, 4 * 1024 * 1024, 64L * 1024 * 1024);
+                start = System.nanoTime();
+                logTemplated(logger, events);
+                logger.flush();
+                report("Binary, until flushed", events, System.nanoTime() - start, print);
+                logger.setOutput(null);
+                binaryBytes = 0;
+                for (Path segment : BinaryLogReader.listSegments(segments)) {
+                    binaryBytes += Files.size(segment); // Closed segments are truncated to their records
+                }
+            }
+            System.out.printf("Bytes per event: text %.1f, binary %.1f%n", 
+                              textBytes / (double) events, binaryBytes / (double) events);
+            
+            long[] total = new long[1];
+            List<BinaryLogReader.LogRecord> warnings = new ArrayList<>();
+            BinaryLogReader.read(segments, record -> ++total[0] > 0 && record.level == Logger.Level.WARN, 
+                                 warnings::add);
+            System.out.println("Reader decoded " + total[0] + " events, " + warnings.size() + " warnings, first: " + 
+                               warnings.get(0).getMessage());
+        } finally {
+            logger.setOutput(null);
+            logger.setLogLevel(previousLevel);
+            Files.deleteIfExists(textFile);
+            deleteSegments(segments);
+            Files.deleteIfExists(segments);
+        }
+    }
+    
+    private static void logTemplated(Logger logger, int events) {
+        for (int i = 0; i < events; i++) {
+            if (i % 100 == 0) {
+                logger.log(Logger.Level.WARN, "Slow order {} took {} ms", i, 250L);
+            } else {
+                logger.log(Logger.Level.INFO, "Processed order {} for {}", i, "acme");
+            }
+        }
+    }
+    
+    private static void deleteSegments(Path directory) throws IOException {
+        for (Path segment : BinaryLogReader.listSegments(directory)) {
+            Files.delete(segment);
+        }
+    }
+    
+    private static void report(String label, int events, long nanos, boolean print) {
+        if (print) {
+            System.out.printf("%-24s %8.1f ns/event%n", label + ":", nanos / (double) events);
+        }
+    }
+}
+
+// Typed handle for one configuration key - parsed values are cached per snapshot under it
+final class ConfigKey<T> {
+    private final String name;
+    private final java.util.function.Function<String, T> parser;
+    private final T defaultValue;
+    private final AtomicInteger parseCount = new AtomicInteger();
+    
+    private ConfigKey(String name, java.util.function.Function<String, T> parser, T defaultValue) {
+        this.name = name;
+        this.parser = parser;
+        this.defaultValue = Objects.requireNonNull(defaultValue);
+    }
+    
+    public static ConfigKey<Integer> intKey(String name, int defaultValue) {
+        return new ConfigKey<>(name, value -> Integer.valueOf(value.trim()), defaultValue);
+    }
+    
+    public static ConfigKey<Long> longKey(String name, long defaultValue) {
+        return new ConfigKey<>(name, value -> Long.valueOf(value.trim()), defaultValue);
+    }
+    
+    public static ConfigKey<Boolean> booleanKey(String name, boolean defaultValue) {
+        return new ConfigKey<>(name, ConfigKey::parseBoolean, defaultValue);
+    }
+    
+    // Plain numbers are seconds, matching the existing "timeout" value
+    public static ConfigKey<Duration> durationKey(String name, Duration defaultValue) {
+        return new ConfigKey<>(name, ConfigKey::parseDuration, defaultValue);
+    }
+    
+    public String getName() { return name; }
+    public T getDefaultValue() { return defaultValue; }
+    public int getParseCount() { return parseCount.get(); }
+    
+    T parse(String raw) {
+        parseCount.incrementAndGet();
+        if (raw == null) {
+            return defaultValue;
+        }
+        try {
+            return parser.apply(raw);
+        } catch (RuntimeException e) {
+            System.out.println("Invalid value for " + name + ": '" + raw + "', using default " + defaultValue);
+            return defaultValue;
+        }
+    }
+    
+    // Stricter than Boolean.parseBoolean, which reads any typo as false
+    private static Boolean parseBoolean(String value) {
+        String trimmed = value.trim();
+        if (trimmed.equalsIgnoreCase("true")) {
+            return Boolean.TRUE;
+        }
+        if (trimmed.equalsIgnoreCase("false")) {
+            return Boolean.FALSE;
+        }
+        throw new IllegalArgumentException("Not a boolean: " + value);
+    }
+    
+    // Accepts "30", "30s", "500ms", "5m", "1h" or ISO-8601 such as "PT30S"
+    private static Duration parseDuration(String value) {
+        String trimmed = value.trim().toLowerCase();
+        if (trimmed.startsWith("pt")) {
+            return Duration.parse(trimmed);
+        }
+        if (trimmed.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(trimmed.substring(0, trimmed.length() - 2).trim()));
+        }
+        char unit = trimmed.isEmpty() ? ' ' : trimmed.charAt(trimmed.length() - 1);
+        String amount = Character.isDigit(unit) 
+                ? trimmed 
+                : trimmed.substring(0, trimmed.length() - 1).trim();
+        long number = Long.parseLong(amount);
+        switch (unit) {
+            case 'h': return Duration.ofHours(number);
+            case 'm': return Duration.ofMinutes(number);
+            case 's': return Duration.ofSeconds(number);
+            default:
+                if (Character.isDigit(unit)) {
+                    return Duration.ofSeconds(number);
+                }
+                throw new IllegalArgumentException("Unknown duration unit: " + value);
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return name;
+    }
+}
+
+// Called when a watched key's raw value differs between the old and new snapshot
+interface ConfigChangeListener {
+    void onChange(String key, String oldValue, String newValue);
+}
+
+// Immutable view of the configuration at one moment; updates build a new snapshot
+final class ConfigSnapshot {
+    private final Map<String, String> properties;
+    private final long version;
+    private final String source;
+    // Typed values parsed on first read; a new snapshot starts empty, so stale values never leak
+    private final ConcurrentHashMap<ConfigKey<?>, Object> parsed = new ConcurrentHashMap<>();
+    
+    ConfigSnapshot(Map<String, String> properties, long version, String source) {
+        this.properties = Map.copyOf(properties);
+        this.version = version;
+        this.source = source;
+    }
+    
+    public String get(String key) {
+        return properties.get(key);
+    }
+    
+    @SuppressWarnings("unchecked")
+    public <T> T get(ConfigKey<T> key) {
+        Object value = parsed.get(key);
+        if (value == null) {
+            value = parsed.computeIfAbsent(key, k -> key.parse(properties.get(key.getName())));
+        }
+        return (T) value;
+    }
+    
+    public Map<String, String> asMap() {
+        return properties;
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public String getSource() {
+        return source;
+    }
+    
+    // Copy-on-write: the current snapshot is never modified, so readers need no lock
+    ConfigSnapshot with(String key, String value) {
+        Map<String, String> copy = new HashMap<>(properties);
+        copy.put(key, value);
+        return new ConfigSnapshot(copy, version + 1, source);
+    }
+}
+
+// Application Configuration Singleton
+class AppConfig {
+    private String appName;
+    private String version;
+    // The only mutable state - reads are one volatile load, writes swap in a new snapshot
+    private final AtomicReference<ConfigSnapshot> snapshot;
+    private static final long RELOAD_QUIET_MILLIS = 50;
+    private volatile Thread watcher;
+    private final AtomicLong reloads = new AtomicLong();
+    private final ConcurrentHashMap<String, CopyOnWriteArrayList<ConfigChangeListener>> listeners = 
+            new ConcurrentHashMap<>();
+    private final Object notifyLock = new Object();
+    private ConfigSnapshot notified; // Last snapshot listeners were told about - guarded by notifyLock
+    private boolean notifying; // Guarded by notifyLock
+    
+    public static final ConfigKey<Integer> MAX_CONNECTIONS = ConfigKey.intKey("max.connections", 100);
+    public static final ConfigKey<Duration> TIMEOUT = ConfigKey.durationKey("timeout", Duration.ofSeconds(30));
+    public static final ConfigKey<Boolean> DEBUG_MODE = ConfigKey.booleanKey("debug.mode", false);
+    
+    private AppConfig() {
+        appName = "MyApplication";
+        version = "1.0.0";
+        snapshot = new AtomicReference<>(new ConfigSnapshot(loadDefaultConfig(), 1, "defaults"));
+        notified = snapshot.get();
+        System.out.println("Configuration loaded with defaults");
+    }
+    
+    // Initialization-on-demand holder: the JVM's class init makes this lazy and thread-safe
+    // without locking on every call
+    private static class Holder {
+        static final AppConfig INSTANCE = new AppConfig();
+    }
+    
+    public static AppConfig getInstance() {
+        return Holder.INSTANCE;
+    }
+    
+    private static Map<String, String> loadDefaultConfig() {
+        Map<String, String> defaults = new HashMap<>();
+        defaults.put("max.connections", "100");
+        defaults.put("timeout", "30");
+        defaults.put("debug.mode", "false");
+        return defaults;
+    }
+    
+    public String getProperty(String key) {
+        return snapshot.get().get(key);
+    }
+    
+    public void setProperty(String key, String value) {
+        swap(current -> current.with(key, value));
+    }
+    
+    public <T> T get(ConfigKey<T> key) {
+        return snapshot.get().get(key);
+    }
+    
+    public int getInt(ConfigKey<Integer> key) {
+        return get(key);
+    }
+    
+    public long getLong(ConfigKey<Long> key) {
+        return get(key);
+    }
+    
+    public boolean getBoolean(ConfigKey<Boolean> key) {
+        return get(key);
+    }
+    
+    public Duration getDuration(ConfigKey<Duration> key) {
+        return get(key);
+    }
+    
+    public void addListener(String key, ConfigChangeListener listener) {
+        listeners.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+    
+    public void removeListener(String key, ConfigChangeListener listener) {
+        CopyOnWriteArrayList<ConfigChangeListener> forKey = listeners.get(key);
+        if (forKey != null) {
+            forKey.remove(listener);
+        }
+    }
+    
+    // CAS loop that remembers which snapshot it replaced, so only keys that really changed fire
+    private ConfigSnapshot swap(java.util.function.UnaryOperator<ConfigSnapshot> update) {
+        while (true) {
+            ConfigSnapshot current = snapshot.get();
+            ConfigSnapshot next = update.apply(current);
+            if (snapshot.compareAndSet(current, next)) {
+                publishChanges();
+                return next;
+            }
+        }
+    }
+    
+    // Notifications run one at a time, each from the last snapshot listeners saw to the newest one,
+    // so a slower thread can never deliver an older value after a newer one. The lock only hands
+    // out the next (before, after) pair; listeners run outside it, on the thread that started the
+    // round. A swap that lands while another thread is notifying returns at once and is folded into
+    // that thread's next round. A slow listener delays only the thread running the round, never a
+    // writer or the watcher waiting on another thread's notifications, and a listener that changes
+    // the configuration itself is picked up by the loop.
+    private void publishChanges() {
+        synchronized (notifyLock) {
+            if (notifying) {
+                return;
+            }
+            notifying = true;
+        }
+        while (true) {
+            ConfigSnapshot before;
+            ConfigSnapshot after;
+            synchronized (notifyLock) {
+                after = snapshot.get();
+                if (after == notified) {
+                    notifying = false;
+                    return;
+                }
+                before = notified;
+                notified = after;
+            }
+            try {
+                notifyListeners(before, after);
+            } catch (RuntimeException | Error e) {
+                synchronized (notifyLock) {
+                    notifying = false;
+                }
+                throw e;
+            }
+        }
+    }
+    
+    private void notifyListeners(ConfigSnapshot before, ConfigSnapshot after) {
+        for (Map.Entry<String, CopyOnWriteArrayList<ConfigChangeListener>> entry : listeners.entrySet()) {
+            String key = entry.getKey();
+            String oldValue = before.get(key);
+            String newValue = after.get(key);
+            if (!Objects.equals(oldValue, newValue)) {
+                for (ConfigChangeListener listener : entry.getValue()) {
+                    listener.onChange(key, oldValue, newValue);
+                }
+            }
+        }
+    }
+    
+    public ConfigSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+    
+    // Replaces the configuration with defaults overlaid by the file; values set at runtime
+    // through setProperty do not survive a reload
+    public ConfigSnapshot reload(Path file) throws IOException {
+        Properties fromFile = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            fromFile.load(reader);
+        }
+        Map<String, String> merged = loadDefaultConfig();
+        for (String key : fromFile.stringPropertyNames()) {
+            merged.put(key, fromFile.getProperty(key));
+        }
+        reloads.incrementAndGet();
+        return swap(current -> new ConfigSnapshot(merged, current.getVersion() + 1, file.toString()));
+    }
+    
+    // Loads the file now and again whenever it changes on disk
+    public synchronized void watch(Path file) throws IOException {
+        stopWatching();
+        Path target = file.toAbsolutePath();
+        reload(target);
+        WatchService watchService = target.getFileSystem().newWatchService();
+        target.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, 
+                                    StandardWatchEventKinds.ENTRY_MODIFY);
+        Thread thread = new Thread(() -> watchLoop(watchService, target), "config-watcher");
+        thread.setDaemon(true);
+        watcher = thread;
+        thread.start();
+    }
+    
+    private void watchLoop(WatchService watchService, Path target) {
+        try (watchService) {
+            while (!Thread.currentThread().isInterrupted()) {
+                boolean changed = drainEvents(watchService.take(), target);
+                if (changed) {
+                    // An editor's truncate-then-write arrives as several events - wait for quiet
+                    WatchKey more;
+                    while ((more = watchService.poll(RELOAD_QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                        drainEvents(more, target);
+                    }
+                    try {
+                        reload(target);
+                    } catch (IOException | IllegalArgumentException e) {
+                        // Keep serving the previous snapshot; a half-written file is retried on its next event
+                        System.out.println("Config reload failed, keeping version " + 
+                                           snapshot.get().getVersion() + ": " + e.getMessage());
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.out.println("Config watcher stopped: " + e.getMessage());
+        }
+    }
+    
+    private static boolean drainEvents(WatchKey key, Path target) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (target.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+    
+    public synchronized void stopWatching() {
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+    }
+    
+    public long getReloadCount() {
+        return reloads.get();
+    }
+    
+    public String getAppInfo() {
+        return appName + " v" + version;
+    }
+}
+
+// A physical connection owned by ConnectionPool - unlike DatabaseConnection it can be
+// instantiated many times, each one paying the same simulated handshake
+class PooledConnection {
+    enum Health { HEALTHY, BROKEN, CLOSED }
+    
+    private static final AtomicInteger nextId = new AtomicInteger(1);
+    
+    private final int id;
+    private final String connectionString;
+    private volatile Health health;
+    private volatile long lastReleasedNanos;
+    private final AtomicLong queriesExecuted = new AtomicLong();
+    private final QueryBackend backend;
+    
+    PooledConnection(String connectionString, QueryBackend backend) {
+        this.id = nextId.getAndIncrement();
+        this.connectionString = connectionString;
+        this.backend = backend;
+        try {
+            Thread.sleep(100); // Simulate connection delay
+            this.health = Health.HEALTHY;
+            System.out.println("Pooled connection #" + id + " established: " + connectionString);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.health = Health.BROKEN;
+        }
+        this.lastReleasedNanos = System.nanoTime();
+    }
+    
+    public void executeQuery(String query) {
+        if (health != Health.HEALTHY) {
+            throw new IllegalStateException("Connection #" + id + " is " + health);
+        }
+        queriesExecuted.incrementAndGet();
+        System.out.println("Connection #" + id + " executing query: " + query);
+    }
+    
+    // Sends the query to this connection's backend without console output
+    public QueryResult query(String query) {
+        if (health != Health.HEALTHY) {
+            throw new IllegalStateException("Connection #" + id + " is " + health);
+        }
+        queriesExecuted.incrementAndGet();
+        return backend.execute(query);
+    }
+    
+    public int getId() { return id; }
+    public String getConnectionString() { return connectionString; }
+    public Health getHealth() { return health; }
+    public long getQueriesExecuted() { return queriesExecuted.get(); }
+    
+    // Lets callers report a failure so the pool discards this connection on release
+    public void markBroken() {
+        if (health == Health.HEALTHY) {
+            health = Health.BROKEN;
+        }
+    }
+    
+    boolean isHealthy() {
+        return health == Health.HEALTHY;
+    }
+    
+    long getLastReleasedNanos() {
+        return lastReleasedNanos;
+    }
+    
+    void markReleased() {
+        lastReleasedNanos = System.nanoTime();
+    }
+    
+    void close() {
+        health = Health.CLOSED;
+    }
+}
+
+// Point-in-time view of a ConnectionPool's counters
+class PoolMetrics {
+    final int totalConnections;
+    final int idleConnections;
+    final int inUse;
+    final int peakInUse;
+    final int maxSize;
+    final long checkouts;
+    final long totalWaitNanos;
+    final long maxWaitNanos;
+    final long created;
+    final long evictedIdle;
+    final long discardedUnhealthy;
+    
+    PoolMetrics(int totalConnections, int idleConnections, int inUse, int peakInUse, int maxSize, 
+                long checkouts, long totalWaitNanos, long maxWaitNanos, 
+                long created, long evictedIdle, long discardedUnhealthy) {
+        this.totalConnections = totalConnections;
+        this.idleConnections = idleConnections;
+        this.inUse = inUse;
+        this.peakInUse = peakInUse;
+        this.maxSize = maxSize;
+        this.checkouts = checkouts;
+        this.totalWaitNanos = totalWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.created = created;
+        this.evictedIdle = evictedIdle;
+        this.discardedUnhealthy = discardedUnhealthy;
+    }
+    
+    public double getUtilization() {
+        return inUse / (double) maxSize;
+    }
+    
+    public double getAverageWaitMillis() {
+        return checkouts == 0 ? 0 : totalWaitNanos / (double) checkouts / 1_000_000;
+    }
+    
+    @Override
+    public String toString() {
+        return "Connections: " + totalConnections + " (" + idleConnections + " idle, " + inUse + " in use, " + 
+               "max " + maxSize + ")\n" + 
+               "Utilization: " + String.format("%.0f%%", getUtilization() * 100) + 
+               " now, peak " + peakInUse + "/" + maxSize + "\n" + 
+               "Checkouts: " + checkouts + ", avg wait " + String.format("%.1f", getAverageWaitMillis()) + 
+               " ms, max wait " + String.format("%.1f", maxWaitNanos / 1_000_000.0) + " ms\n" + 
+               "Created: " + created + ", evicted idle: " + evictedIdle + 
+               ", discarded unhealthy: " + discardedUnhealthy;
+    }
+}
+
+// Bounded pool of connections, so concurrent callers no longer share one logical connection
+class ConnectionPool implements AutoCloseable {
+    private final String connectionString;
+    private final java.util.function.Supplier<QueryBackend> backendFactory;
+    private final int minSize;
+    private final int maxSize;
+    private final long idleTimeoutNanos;
+    private final Semaphore permits; // One permit per connection a caller may hold
+    private final Deque<PooledConnection> idle = new ArrayDeque<>(); // Most recently released first
+    private final Set<PooledConnection> checkedOut = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed;
+    
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger peakInUse = new AtomicInteger();
+    private final LongAdder checkouts = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder evictedIdle = new LongAdder();
+    private final LongAdder discardedUnhealthy = new LongAdder();
+    
+    private ConnectionPool(Builder builder) {
+        this.connectionString = builder.connectionString;
+        this.backendFactory = builder.backendFactory;
+        this.minSize = builder.minSize;
+        this.maxSize = builder.maxSize;
+        this.idleTimeoutNanos = builder.idleTimeout.toNanos();
+        this.permits = new Semaphore(builder.maxSize, builder.fair);
+        
+        if (builder.prewarm) {
+            prewarm();
+        }
+        
+        if (builder.evictionInterval != null) {
+            long period = builder.evictionInterval.toMillis();
+            evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "connection-pool-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            evictor.scheduleAtFixedRate(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            evictor = null;
+        }
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    // Opens minSize connections up front, in parallel, so no caller pays the handshake
+    private void prewarm() {
+        List<CompletableFuture<PooledConnection>> opening = new ArrayList<>();
+        for (int i = 0; i < minSize; i++) {
+            opening.add(CompletableFuture.supplyAsync(this::openConnection));
+        }
+        for (CompletableFuture<PooledConnection> connection : opening) {
+            synchronized (idle) {
+                idle.addLast(connection.join());
+            }
+        }
+    }
+    
+    public PooledConnection borrow() throws InterruptedException {
+        long start = System.nanoTime();
+        permits.acquire();
+        return checkOut(start);
+    }
+    
+    public PooledConnection borrow(Duration timeout) throws InterruptedException, TimeoutException {
+        long start = System.nanoTime();
+        if (!permits.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+            throw new TimeoutException("No connection available within " + timeout.toMillis() + " ms");
+        }
+        return checkOut(start);
+    }
+    
+    private PooledConnection checkOut(long waitStart) {
+        if (closed) {
+            permits.release();
+            throw new IllegalStateException("Connection pool is closed");
+        }
+        
+        long waited = System.nanoTime() - waitStart;
+        checkouts.increment();
+        totalWaitNanos.add(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        
+        try {
+            PooledConnection connection = takeHealthyIdle();
+            if (connection == null) {
+                connection = openConnection(); // Holding a permit guarantees room under maxSize
+                if (!connection.isHealthy()) {
+                    // An interrupted handshake leaves the connection BROKEN - never hand that out
+                    discard(connection);
+                    discardedUnhealthy.increment();
+                    throw new IllegalStateException("Connection #" + connection.getId() + " failed its handshake");
+                }
+            }
+            checkedOut.add(connection);
+            peakInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+            return connection;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+    
+    private PooledConnection takeHealthyIdle() {
+        while (true) {
+            PooledConnection connection;
+            synchronized (idle) {
+                connection = idle.pollFirst();
+            }
+            if (connection == null || connection.isHealthy()) {
+                return connection;
+            }
+            discard(connection);
+            discardedUnhealthy.increment();
+        }
+    }
+    
+    // Only connections currently borrowed from this pool are accepted, so a duplicate or foreign
+    // release cannot push inUse negative or hand out more permits than maxSize
+    public void release(PooledConnection connection) {
+        if (!checkedOut.remove(connection)) {
+            throw new IllegalArgumentException("Connection #" + connection.getId() + 
+                                               " is not checked out from this pool");
+        }
+        inUse.decrementAndGet();
+        if (connection.isHealthy() && !closed) {
+            connection.markReleased();
+            synchronized (idle) {
+                idle.addFirst(connection);
+            }
+        } else {
+            discard(connection);
+            if (!closed) {
+                discardedUnhealthy.increment();
+            }
+        }
+        permits.release();
+    }
+    
+    public <T> T withConnection(java.util.function.Function<PooledConnection, T> work) throws InterruptedException {
+        PooledConnection connection = borrow();
+        try {
+            return work.apply(connection);
+        } catch (RuntimeException e) {
+            connection.markBroken();
+            throw e;
+        } finally {
+            release(connection);
+        }
+    }
+    
+    // Closes connections idle longer than the timeout, never shrinking below minSize
+    public int evictIdle() {
+        long now = System.nanoTime();
+        List<PooledConnection> expired = new ArrayList<>();
+        synchronized (idle) {
+            // Least recently released connections sit at the tail
+            while (!idle.isEmpty() && totalConnections.get() - expired.size() > minSize && 
+                   now - idle.peekLast().getLastReleasedNanos() > idleTimeoutNanos) {
+                expired.add(idle.pollLast());
+            }
+        }
+        for (PooledConnection connection : expired) {
+            discard(connection);
+            evictedIdle.increment();
+        }
+        return expired.size();
+    }
+    
+    private PooledConnection openConnection() {
+        PooledConnection connection = new PooledConnection(connectionString, backendFactory.get());
+        totalConnections.incrementAndGet();
+        created.increment();
+        return connection;
+    }
     
-    // Private constructor prevents external instantiation
-    private DatabaseConnection() {
-        // Simulate expensive connection setup
-        try {
-            Thread.sleep(100); // Simulate connection delay
-            this.connectionString = "jdbc:mysql://localhost:3306/mydb";
-            this.isConnected = true;
-            System.out.println("Database connection established: " + connectionString);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    private void discard(PooledConnection connection) {
+        connection.close();
+        totalConnections.decrementAndGet();
+    }
+    
+    public PoolMetrics getMetrics() {
+        int idleCount;
+        synchronized (idle) {
+            idleCount = idle.size();
         }
+        return new PoolMetrics(totalConnections.get(), idleCount, inUse.get(), peakInUse.get(), maxSize, 
+                               checkouts.sum(), totalWaitNanos.sum(), maxWaitNanos.get(), 
+                               created.sum(), evictedIdle.sum(), discardedUnhealthy.sum());
     }
     
-    // Double-checked locking for thread safety
-    public static DatabaseConnection getInstance() {
-        if (instance == null) {
-            synchronized (DatabaseConnection.class) {
-                if (instance == null) {
-                    instance = new DatabaseConnection();
-                }
+    @Override
+    public void close() {
+        closed = true;
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        synchronized (idle) {
+            for (PooledConnection connection : idle) {
+                discard(connection);
             }
+            idle.clear();
         }
-        return instance;
     }
     
-    public void executeQuery(String query) {
-        if (!isConnected) {
-            throw new IllegalStateException("Database not connected");
+    static class Builder {
+        private String connectionString = "jdbc:mysql://localhost:3306/mydb";
+        private int minSize = 1;
+        private int maxSize = 10;
+        private boolean fair = false;
+        private boolean prewarm = true;
+        private Duration idleTimeout = Duration.ofMinutes(5);
+        private Duration evictionInterval = null; // Manual evictIdle() only
+        private java.util.function.Supplier<QueryBackend> backendFactory = 
+                () -> new SyntheticQueryBackend(Duration.ofMillis(2), Duration.ofNanos(200_000));
+        
+        public Builder connectionString(String connectionString) {
+            this.connectionString = connectionString;
+            return this;
+        }
+        
+        // Each physical connection gets its own backend, so server-side work runs per connection
+        public Builder backendFactory(java.util.function.Supplier<QueryBackend> backendFactory) {
+            this.backendFactory = backendFactory;
+            return this;
+        }
+        
+        public Builder minSize(int minSize) {
+            this.minSize = minSize;
+            return this;
+        }
+        
+        public Builder maxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+        
+        // Fair checkout serves waiting callers in arrival order; non-fair allows barging for throughput
+        public Builder fair(boolean fair) {
+            this.fair = fair;
+            return this;
+        }
+        
+        public Builder prewarm(boolean prewarm) {
+            this.prewarm = prewarm;
+            return this;
+        }
+        
+        public Builder idleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+        
+        public Builder evictionInterval(Duration evictionInterval) {
+            this.evictionInterval = evictionInterval;
+            return this;
+        }
+        
+        public ConnectionPool build() {
+            if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+                throw new IllegalArgumentException("Invalid pool size: min " + minSize + ", max " + maxSize);
+            }
+            return new ConnectionPool(this);
         }
-        System.out.println("Executing query: " + query);
     }
+}
+
+// Log-linear latency recorder in the style of HdrHistogram: values are bucketed by power of two,
+// and each power is split into 64 linear sub-buckets, so any recorded value is kept to within ~1.6%
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
     
-    public String getConnectionString() {
-        return connectionString;
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * HALF);
+    private final LongAdder totalCount = new LongAdder();
+    private final AtomicLong maxValue = new AtomicLong();
+    
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(indexOf(value));
+        totalCount.increment();
+        maxValue.accumulateAndGet(value, Math::max);
     }
     
-    public void disconnect() {
-        isConnected = false;
-        System.out.println("Database connection closed");
+    public long getTotalCount() {
+        return totalCount.sum();
     }
     
-    // Prevent cloning
-    @Override
-    protected Object clone() throws CloneNotSupportedException {
-        throw new CloneNotSupportedException("Singleton cannot be cloned");
+    public long getMax() {
+        return maxValue.get();
+    }
+    
+    // Smallest recorded value (to bucket precision) that at least percentile% of samples do not exceed
+    public long getValueAtPercentile(double percentile) {
+        long total = getTotalCount();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), getMax());
+            }
+        }
+        return getMax();
+    }
+    
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Shift so the value lands in [HALF, SUB_BUCKETS)
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) ((value >>> shift) - HALF);
+    }
+    
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long subBucket = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+    
+    public String summary() {
+        return String.format("p50 %s  p90 %s  p99 %s  p99.9 %s  max %s", 
+                             millis(getValueAtPercentile(50)), millis(getValueAtPercentile(90)), 
+                             millis(getValueAtPercentile(99)), millis(getValueAtPercentile(99.9)), 
+                             millis(getMax()));
+    }
+    
+    private static String millis(long nanos) {
+        return String.format("%6.2f", nanos / 1_000_000.0);
     }
 }
 
-// Enum-based Singleton (Joshua Bloch's approach)
-enum Logger {
-    INSTANCE;
+// Drives many concurrent workers against a blocking query target for a fixed duration and
+// reports throughput and latency percentiles per worker count
+class LoadGenerator {
+    interface LoadTarget {
+        void query(String sql) throws Exception;
+    }
     
-    private String logLevel;
+    // Without virtual threads every worker is a platform thread, so larger worker counts are refused
+    // rather than silently capped - a capped run would report the limit's throughput as the count's
+    static final int PLATFORM_WORKER_LIMIT = 2_000;
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
     
-    Logger() {
-        this.logLevel = "INFO";
+    private final boolean virtualThreads = VirtualThreads.isAvailable();
+    
+    static class LoadResult {
+        final int workers;
+        final long completed;
+        final long errors;
+        final long elapsedNanos;
+        final LatencyHistogram latencies;
+        
+        LoadResult(int workers, long completed, long errors, long elapsedNanos, LatencyHistogram latencies) {
+            this.workers = workers;
+            this.completed = completed;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            this.latencies = latencies;
+        }
+        
+        double getThroughput() {
+            return completed / (elapsedNanos / 1e9);
+        }
     }
     
-    public void log(String message) {
-        System.out.println("[" + logLevel + "] " + message);
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
     }
     
-    public void setLogLevel(String level) {
-        this.logLevel = level;
+    public boolean supportsWorkers(int workers) {
+        return virtualThreads || workers <= PLATFORM_WORKER_LIMIT;
     }
     
-    public String getLogLevel() {
-        return logLevel;
+    public LoadResult run(LoadTarget target, int workers, Duration duration) throws InterruptedException {
+        if (!supportsWorkers(workers)) {
+            throw new IllegalArgumentException(workers + " workers need virtual threads (JDK 21+); " +
+                                               "platform threads are limited to " + PLATFORM_WORKER_LIMIT);
+        }
+        LatencyHistogram latencies = new LatencyHistogram();
+        LongAdder completed = new LongAdder();
+        LongAdder errors = new LongAdder();
+        CountDownLatch startGate = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(workers);
+        AtomicLong deadline = new AtomicLong();
+        
+        Runnable worker = () -> {
+            try {
+                startGate.await();
+                long end = deadline.get();
+                int iteration = 0;
+                while (System.nanoTime() < end) {
+                    long start = System.nanoTime();
+                    try {
+                        target.query("SELECT * FROM orders WHERE id = " + iteration++);
+                        latencies.record(System.nanoTime() - start);
+                        completed.increment();
+                    } catch (InterruptedException e) {
+                        throw e;
+                    } catch (Exception e) {
+                        errors.increment();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                finished.countDown();
+            }
+        };
+        
+        ExecutorService executor = virtualThreads ? VirtualThreads.newPerTaskExecutor() : null;
+        for (int i = 0; i < workers; i++) {
+            if (executor != null) {
+                executor.execute(worker);
+            } else {
+                Thread thread = new Thread(null, worker, "load-worker-" + i, PLATFORM_STACK_SIZE);
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+        
+        long start = System.nanoTime();
+        deadline.set(start + duration.toNanos());
+        startGate.countDown();
+        finished.await();
+        long elapsed = System.nanoTime() - start;
+        if (executor != null) {
+            executor.shutdown();
+        }
+        return new LoadResult(workers, completed.sum(), errors.sum(), elapsed, latencies);
+    }
+    
+    // Runs each worker count in turn and flags the point where adding workers stops adding throughput
+    public List<LoadResult> sweep(String label, LoadTarget target, int[] workerCounts, Duration duration) 
+            throws InterruptedException {
+        System.out.println(label + " (" + (virtualThreads ? "virtual threads" : 
+                           "platform threads, max " + PLATFORM_WORKER_LIMIT) + "), latencies in ms:");
+        List<LoadResult> results = new ArrayList<>();
+        double best = 0;
+        boolean saturated = false;
+        for (int workers : workerCounts) {
+            if (!supportsWorkers(workers)) {
+                System.out.printf("  %7d workers skipped - needs virtual threads (JDK 21+)%n", workers);
+                continue;
+            }
+            LoadResult result = run(target, workers, duration);
+            results.add(result);
+            String marker = "";
+            if (!saturated && best > 0 && result.getThroughput() < best * 1.1) {
+                saturated = true;
+                marker = "  <- saturated";
+            }
+            best = Math.max(best, result.getThroughput());
+            System.out.printf("  %7d workers %,10.0f q/s  %s%s%s%n", result.workers, result.getThroughput(), 
+                              result.latencies.summary(), 
+                              result.errors > 0 ? "  errors " + result.errors : "", marker);
+        }
+        return results;
+    }
+    
+    // Usage: java LoadGenerator [singleton|pool] [seconds per step] [worker counts...]
+    public static void main(String[] args) throws InterruptedException {
+        String targetName = args.length > 0 ? args[0] : "singleton";
+        Duration step = Duration.ofSeconds(args.length > 1 ? Long.parseLong(args[1]) : 2);
+        int[] workerCounts = args.length > 2 
+                ? Arrays.stream(args, 2, args.length).mapToInt(Integer::parseInt).toArray() 
+                : new int[] {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000};
+        
+        LoadGenerator generator = new LoadGenerator();
+        if (targetName.equals("pool")) {
+            try (ConnectionPool pool = ConnectionPool.builder().minSize(8).maxSize(32).build()) {
+                generator.sweep("Connection pool", sql -> pool.withConnection(c -> c.query(sql)), 
+                                workerCounts, step);
+            }
+        } else {
+            DatabaseConnection db = DatabaseConnection.getInstance();
+            generator.sweep("DatabaseConnection singleton", db::query, workerCounts, step);
+        }
     }
 }
 
-// Application Configuration Singleton
-class AppConfig {
-    private static AppConfig instance;
-    private String appName;
-    private String version;
-    private java.util.Properties properties;
+// Lazily created instance owned by InitializationManager; records how long creation took,
+// on which thread, and whether it happened at startup or on first use
+class ManagedSingleton<T> {
+    private final String name;
+    private final java.util.function.Supplier<T> factory;
+    private volatile T instance;
+    private volatile long initNanos = -1;
+    private volatile String initThread;
+    private volatile boolean initializedAtStartup;
     
-    private AppConfig() {
-        appName = "MyApplication";
-        version = "1.0.0";
-        properties = new java.util.Properties();
-        loadDefaultConfig();
+    ManagedSingleton(String name, java.util.function.Supplier<T> factory) {
+        this.name = name;
+        this.factory = factory;
+    }
+    
+    // Same double-checked locking as DatabaseConnection.getInstance()
+    public T get() {
+        T result = instance;
+        if (result == null) {
+            synchronized (this) {
+                result = instance;
+                if (result == null) {
+                    result = initialize(false);
+                }
+            }
+        }
+        return result;
     }
     
-    public static synchronized AppConfig getInstance() {
+    synchronized void initializeAtStartup() {
         if (instance == null) {
-            instance = new AppConfig();
+            initialize(true);
         }
-        return instance;
     }
     
-    private void loadDefaultConfig() {
-        properties.setProperty("max.connections", "100");
-        properties.setProperty("timeout", "30");
-        properties.setProperty("debug.mode", "false");
-        System.out.println("Configuration loaded with defaults");
+    private T initialize(boolean atStartup) {
+        long start = System.nanoTime();
+        T created = factory.get();
+        initNanos = System.nanoTime() - start;
+        initThread = Thread.currentThread().getName();
+        initializedAtStartup = atStartup;
+        instance = created;
+        return created;
     }
     
-    public String getProperty(String key) {
-        return properties.getProperty(key);
+    public String getName() { return name; }
+    public boolean isInitialized() { return instance != null; }
+    public long getInitNanos() { return initNanos; }
+    public String getInitThread() { return initThread; }
+    public boolean wasInitializedAtStartup() { return initializedAtStartup; }
+}
+
+// Registers singletons and decides when they are built: all in parallel at startup, or lazily
+// on first getInstance() as the original classes do
+class InitializationManager {
+    enum Mode { EAGER_PARALLEL, LAZY }
+    
+    private final List<ManagedSingleton<?>> singletons = new ArrayList<>();
+    private long startupNanos;
+    
+    // Startup time and the latency of the first request made right after it
+    static class StartupTiming {
+        final Mode mode;
+        final long startupNanos;
+        final long firstRequestNanos;
+        
+        StartupTiming(Mode mode, long startupNanos, long firstRequestNanos) {
+            this.mode = mode;
+            this.startupNanos = startupNanos;
+            this.firstRequestNanos = firstRequestNanos;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%-15s startup %6.1f ms, time to first request %6.1f ms", 
+                                 mode, startupNanos / 1e6, firstRequestNanos / 1e6);
+        }
     }
     
-    public void setProperty(String key, String value) {
-        properties.setProperty(key, value);
+    public synchronized <T> ManagedSingleton<T> register(String name, java.util.function.Supplier<T> factory) {
+        ManagedSingleton<T> singleton = new ManagedSingleton<>(name, factory);
+        singletons.add(singleton);
+        return singleton;
     }
     
-    public String getAppInfo() {
-        return appName + " v" + version;
+    // Eager mode overlaps every initializer, so startup costs the slowest one rather than the sum
+    public synchronized Duration startup(Mode mode) {
+        long start = System.nanoTime();
+        if (mode == Mode.EAGER_PARALLEL && !singletons.isEmpty()) {
+            ExecutorService executor = Executors.newFixedThreadPool(singletons.size(), runnable -> {
+                Thread thread = new Thread(runnable, "singleton-init");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<CompletableFuture<Void>> pending = new ArrayList<>();
+                for (ManagedSingleton<?> singleton : singletons) {
+                    pending.add(CompletableFuture.runAsync(singleton::initializeAtStartup, executor));
+                }
+                for (int i = 0; i < pending.size(); i++) {
+                    try {
+                        pending.get(i).join();
+                    } catch (CompletionException e) {
+                        throw new IllegalStateException("Failed to initialize " + singletons.get(i).getName(), 
+                                                        e.getCause());
+                    }
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+        startupNanos = System.nanoTime() - start;
+        return Duration.ofNanos(startupNanos);
+    }
+    
+    public StartupTiming measureFirstRequest(Mode mode, Runnable firstRequest) {
+        startup(mode);
+        long start = System.nanoTime();
+        firstRequest.run();
+        return new StartupTiming(mode, startupNanos, System.nanoTime() - start);
+    }
+    
+    public synchronized void report() {
+        System.out.printf("  Startup: %.1f ms%n", startupNanos / 1e6);
+        for (ManagedSingleton<?> singleton : singletons) {
+            if (!singleton.isInitialized()) {
+                System.out.printf("  %-16s not initialized%n", singleton.getName());
+            } else {
+                System.out.printf("  %-16s %7.1f ms on %s (%s)%n", singleton.getName(), 
+                                  singleton.getInitNanos() / 1e6, singleton.getInitThread(), 
+                                  singleton.wasInitializedAtStartup() ? "startup" : "first use");
+            }
+        }
+    }
+    
+    // Registers the application's real singletons - the DatabaseConnection handshake and AppConfig -
+    // plus a reporting pool, then measures startup and the first query under one mode. Run in a
+    // fresh JVM so every singleton starts cold.
+    // Usage: java InitializationManager EAGER_PARALLEL|LAZY
+    public static void main(String[] args) {
+        Mode mode = Mode.valueOf(args[0]);
+        InitializationManager manager = new InitializationManager();
+        ManagedSingleton<DatabaseConnection> database = manager.register("database", DatabaseConnection::getInstance);
+        manager.register("config", AppConfig::getInstance);
+        ManagedSingleton<ConnectionPool> reportingPool = manager.register("reporting pool", () -> 
+                ConnectionPool.builder().minSize(2).maxSize(4).build());
+        
+        StartupTiming timing = manager.measureFirstRequest(mode, () -> database.get().query("SELECT * FROM users"));
+        System.out.println(mode + ":");
+        manager.report();
+        System.out.println(timing);
+        if (reportingPool.isInitialized()) {
+            reportingPool.get().close();
+        }
+    }
+    
+    // Singletons cannot be reset once built, so each cold measurement needs its own JVM
+    public static void measureInFreshJvm(Mode mode) throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), 
+                "InitializationManager", mode.name())
+                .inheritIO()
+                .start();
+        if (child.waitFor() != 0) {
+            throw new IllegalStateException("Startup measurement for " + mode + " failed");
+        }
+    }
+}
+
+// One instance per JVM, per thread or per tenant key, for workloads that need isolation rather
+// than a single shared object
+class ScopedInstanceRegistry<T> {
+    enum Scope { GLOBAL, THREAD, TENANT }
+    
+    private static final class ThreadScoped<T> {
+        final java.lang.ref.WeakReference<Thread> owner;
+        final T instance;
+        
+        ThreadScoped(Thread owner, T instance) {
+            this.owner = new java.lang.ref.WeakReference<>(owner);
+            this.instance = instance;
+        }
+        
+        boolean isAbandoned() {
+            Thread thread = owner.get();
+            return thread == null || !thread.isAlive();
+        }
+    }
+    
+    // The access stamp doubles as the entry's state: a hit acquires the entry by moving the stamp
+    // forward, and eviction claims it by swapping the exact stamp it judged stale for DISPOSED, so
+    // an entry acquired after it was picked as a victim is never disposed
+    private static final class TenantScoped<T> {
+        static final long DISPOSED = Long.MIN_VALUE;
+        
+        final T instance;
+        final AtomicLong lastAccessNanos = new AtomicLong(now());
+        
+        TenantScoped(T instance) {
+            this.instance = instance;
+        }
+        
+        boolean acquire() {
+            while (true) {
+                long stamp = lastAccessNanos.get();
+                if (stamp == DISPOSED) {
+                    return false;
+                }
+                if (lastAccessNanos.compareAndSet(stamp, now())) {
+                    return true;
+                }
+            }
+        }
+        
+        // nanoTime has an arbitrary origin, so a real reading could collide with the sentinel
+        static long now() {
+            long now = System.nanoTime();
+            return now == DISPOSED ? now + 1 : now;
+        }
+        
+        boolean claimForDisposal(long expectedStamp) {
+            return lastAccessNanos.compareAndSet(expectedStamp, DISPOSED);
+        }
+    }
+    
+    private final java.util.function.Supplier<T> factory;
+    private final java.util.function.Consumer<T> disposer;
+    private final int maxTenants;
+    private final ManagedSingleton<T> global;
+    private final ThreadLocal<ThreadScoped<T>> perThread;
+    // Also reachable from each thread's ThreadLocal; kept here so dead threads' instances can be disposed
+    private final Set<ThreadScoped<T>> threadInstances = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, TenantScoped<T>> tenants = new ConcurrentHashMap<>();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder disposed = new LongAdder();
+    
+    ScopedInstanceRegistry(String name, java.util.function.Supplier<T> factory, 
+                           java.util.function.Consumer<T> disposer, int maxTenants) {
+        if (maxTenants < 1) {
+            throw new IllegalArgumentException("maxTenants must be at least 1: " + maxTenants);
+        }
+        this.factory = factory;
+        this.disposer = disposer;
+        this.maxTenants = maxTenants;
+        this.global = new ManagedSingleton<>(name, this::create);
+        this.perThread = ThreadLocal.withInitial(() -> {
+            ThreadScoped<T> scoped = new ThreadScoped<>(Thread.currentThread(), create());
+            threadInstances.add(scoped);
+            return scoped;
+        });
+    }
+    
+    public T get(Scope scope, String tenant) {
+        switch (scope) {
+            case THREAD: return forCurrentThread();
+            case TENANT: return forTenant(tenant);
+            default: return global();
+        }
+    }
+    
+    public T global() {
+        return global.get();
+    }
+    
+    public T forCurrentThread() {
+        return perThread.get().instance;
+    }
+    
+    // Lock-free on a hit; only a miss that pushes past maxTenants takes the eviction lock.
+    // An entry disposed between the lookup and the acquire is unmapped and the lookup retried.
+    public T forTenant(String tenant) {
+        while (true) {
+            TenantScoped<T> scoped = tenants.get(tenant);
+            if (scoped == null) {
+                scoped = tenants.computeIfAbsent(tenant, key -> new TenantScoped<>(create()));
+                if (tenants.size() > maxTenants) {
+                    evictLeastRecentlyUsed();
+                }
+            }
+            if (scoped.acquire()) {
+                return scoped.instance;
+            }
+            tenants.remove(tenant, scoped);
+        }
+    }
+    
+    // A linear scan is fine here - it only runs on a miss, and tenant counts are bounded
+    private synchronized void evictLeastRecentlyUsed() {
+        while (tenants.size() > maxTenants) {
+            Map.Entry<String, TenantScoped<T>> oldest = null;
+            long oldestStamp = 0;
+            for (Map.Entry<String, TenantScoped<T>> entry : tenants.entrySet()) {
+                long stamp = entry.getValue().lastAccessNanos.get();
+                // nanoTime values may wrap, so compare by difference, never directly
+                if (stamp != TenantScoped.DISPOSED && (oldest == null || stamp - oldestStamp < 0)) {
+                    oldest = entry;
+                    oldestStamp = stamp;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            // Fails if the tenant was used since the scan - it is no longer the oldest, so rescan
+            if (oldest.getValue().claimForDisposal(oldestStamp)) {
+                tenants.remove(oldest.getKey(), oldest.getValue());
+                dispose(oldest.getValue().instance);
+            }
+        }
+    }
+    
+    // Disposes instances whose thread has died and tenants idle longer than the timeout
+    public int cleanupAbandoned(Duration tenantIdleTimeout) {
+        int removed = 0;
+        for (Iterator<ThreadScoped<T>> it = threadInstances.iterator(); it.hasNext(); ) {
+            ThreadScoped<T> scoped = it.next();
+            if (scoped.isAbandoned()) {
+                it.remove();
+                dispose(scoped.instance);
+                removed++;
+            }
+        }
+        long cutoff = System.nanoTime() - tenantIdleTimeout.toNanos();
+        for (Map.Entry<String, TenantScoped<T>> entry : tenants.entrySet()) {
+            TenantScoped<T> scoped = entry.getValue();
+            long stamp = scoped.lastAccessNanos.get();
+            if (stamp != TenantScoped.DISPOSED && stamp - cutoff < 0 && scoped.claimForDisposal(stamp)) {
+                tenants.remove(entry.getKey(), scoped);
+                dispose(scoped.instance);
+                removed++;
+            }
+        }
+        return removed;
+    }
+    
+    private T create() {
+        created.increment();
+        return factory.get();
+    }
+    
+    private void dispose(T instance) {
+        disposed.increment();
+        disposer.accept(instance);
+    }
+    
+    public int getThreadScopeCount() { return threadInstances.size(); }
+    public int getTenantCount() { return tenants.size(); }
+    public long getCreatedCount() { return created.sum(); }
+    public long getDisposedCount() { return disposed.sum(); }
+}
+
+// Threads hammer the instance their scope hands out; a zero-latency backend still serializes on
+// its per-connection lock, so shared instances show up as contention
+class ScopeContentionBenchmark {
+    public static void run(int threads, int operationsPerThread, int tenantCount) throws InterruptedException {
+        for (ScopedInstanceRegistry.Scope scope : ScopedInstanceRegistry.Scope.values()) {
+            ScopedInstanceRegistry<QueryBackend> registry = new ScopedInstanceRegistry<>(
+                    "backend", () -> new SyntheticQueryBackend(Duration.ZERO, Duration.ZERO), 
+                    backend -> { }, tenantCount);
+            List<Thread> workers = new ArrayList<>();
+            CountDownLatch startGate = new CountDownLatch(1);
+            for (int t = 0; t < threads; t++) {
+                int threadIndex = t;
+                Thread worker = new Thread(() -> {
+                    try {
+                        startGate.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < operationsPerThread; i++) {
+                        String tenant = "tenant-" + ((threadIndex + i) % tenantCount);
+                        registry.get(scope, tenant).execute("SELECT 1");
+                    }
+                });
+                workers.add(worker);
+                worker.start();
+            }
+            long start = System.nanoTime();
+            startGate.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("%-7s %,12.0f ops/sec, %d instances%n", scope + ":", 
+                              threads * (double) operationsPerThread / (elapsed / 1e9), registry.getCreatedCount());
+        }
     }
 }
 
 // Thread-safe demonstration
 class DatabaseWorker extends Thread {
     private String workerName;
+    private ConnectionPool pool; // null means use the DatabaseConnection singleton
     
     public DatabaseWorker(String name) {
+        this(name, null);
+    }
+    
+    public DatabaseWorker(String name, ConnectionPool pool) {
         this.workerName = name;
+        this.pool = pool;
     }
     
     @Override
     public void run() {
+        if (pool != null) {
+            runWithPool();
+            return;
+        }
         System.out.println(workerName + " requesting database connection...");
         DatabaseConnection db = DatabaseConnection.getInstance();
         System.out.println(workerName + " got connection: " + 
                           db.getConnectionString());
         db.executeQuery("SELECT * FROM users WHERE worker = '" + workerName + "'");
     }
+    
+    private void runWithPool() {
+        try {
+            pool.withConnection(connection -> {
+                System.out.println(workerName + " got pooled connection #" + connection.getId());
+                connection.executeQuery("SELECT * FROM users WHERE worker = '" + workerName + "'");
+                try {
+                    Thread.sleep(50); // Hold the connection like a real transaction would
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
 
 public class SingletonDemo {
@@ -159,6 +2716,8 @@ public class SingletonDemo {
         logger1.log("Application started");
         logger2.setLogLevel("DEBUG");
         logger1.log("Debug information");
+        logger1.log(Logger.Level.TRACE, () -> "Not built - TRACE is below " + logger1.getLogLevel());
+        logger1.flush();
         
         System.out.println("\n3. Configuration Singleton:");
         AppConfig config1 = AppConfig.getInstance();
@@ -172,6 +2731,47 @@ public class SingletonDemo {
         System.out.println("Custom setting from config2: " + 
                           config2.getProperty("custom.setting"));
         
+        try {
+            Path configFile = Files.createTempFile("app-config", ".properties");
+            Files.writeString(configFile, "max.connections=200\n");
+            config1.watch(configFile);
+            System.out.println("Watching file, version " + config1.getSnapshot().getVersion() + 
+                               ", max connections: " + config1.getProperty("max.connections"));
+            
+            long before = config1.getSnapshot().getVersion();
+            Files.writeString(configFile, "max.connections=250\ntimeout=45\n");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (config1.getSnapshot().getVersion() == before && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            ConfigSnapshot reloaded = config1.getSnapshot();
+            System.out.println("Hot reloaded version " + reloaded.getVersion() + 
+                               ": max connections " + reloaded.get("max.connections") + 
+                               ", timeout " + reloaded.get("timeout"));
+            config1.stopWatching();
+            Files.deleteIfExists(configFile);
+            
+            config1.addListener("max.connections", (key, oldValue, newValue) -> 
+                    System.out.println("Listener: " + key + " changed " + oldValue + " -> " + newValue));
+            config1.setProperty("debug.mode", "true"); // No listener on this key
+            config1.setProperty("max.connections", "300");
+            config1.setProperty("timeout", "1500ms");
+            
+            long checksum = 0;
+            for (int i = 0; i < 1_000_000; i++) {
+                checksum += config1.getInt(AppConfig.MAX_CONNECTIONS) + 
+                            config1.getDuration(AppConfig.TIMEOUT).toMillis();
+            }
+            System.out.println("Typed reads: max connections " + config1.getInt(AppConfig.MAX_CONNECTIONS) + 
+                               ", timeout " + config1.getDuration(AppConfig.TIMEOUT).toMillis() + " ms, debug " + 
+                               config1.getBoolean(AppConfig.DEBUG_MODE) + " (checksum " + checksum + ")");
+            System.out.println("Parses for 1M reads of max.connections: " + AppConfig.MAX_CONNECTIONS.getParseCount());
+        } catch (IOException e) {
+            System.out.println("Config watch failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
         System.out.println("\n4. Thread Safety Test:");
         Thread worker1 = new DatabaseWorker("Worker-1");
         Thread worker2 = new DatabaseWorker("Worker-2");
@@ -189,7 +2789,104 @@ public class SingletonDemo {
             e.printStackTrace();
         }
         
-        System.out.println("\n5. Singleton Characteristics:");
+        System.out.println("\n5. Connection Pool:");
+        try (ConnectionPool pool = ConnectionPool.builder()
+                .minSize(2)
+                .maxSize(3)
+                .fair(true)
+                .idleTimeout(Duration.ofMillis(200))
+                .build()) {
+            List<Thread> pooledWorkers = new ArrayList<>();
+            for (int i = 1; i <= 6; i++) {
+                Thread worker = new DatabaseWorker("Pooled-Worker-" + i, pool);
+                pooledWorkers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : pooledWorkers) {
+                worker.join();
+            }
+            System.out.println(pool.getMetrics());
+            
+            Thread.sleep(300);
+            System.out.println("Evicted idle connections: " + pool.evictIdle());
+            System.out.println(pool.getMetrics());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        System.out.println("\n6. Asynchronous Queries:");
+        DatabaseConnection db = DatabaseConnection.getInstance();
+        db.executeQueryAsync("SELECT COUNT(*) FROM users")
+          .thenAccept(result -> System.out.println("Async result: " + result))
+          .join();
+        db.executePipelined(List.of("SELECT 1", "SELECT 2", "SELECT 3"))
+          .thenAccept(results -> System.out.println("Pipelined " + results.size() + 
+                                                    " queries in one round trip: " + results.get(2)))
+          .join();
+        AsyncQueryBenchmark.run(500, 10);
+        
+        System.out.println("\n7. Load Generator:");
+        try {
+            LoadGenerator generator = new LoadGenerator();
+            int[] workerCounts = {1, 8, 64, 512};
+            Duration step = Duration.ofMillis(300);
+            db.configureAsync(new SyntheticQueryBackend(Duration.ofMillis(2), Duration.ofNanos(200_000)), 64, 16);
+            generator.sweep("DatabaseConnection singleton", db::query, workerCounts, step);
+            try (ConnectionPool pool = ConnectionPool.builder().minSize(8).maxSize(8).build()) {
+                generator.sweep("Connection pool (8 connections)", 
+                                sql -> pool.withConnection(c -> c.query(sql)), workerCounts, step);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        System.out.println("\n8. Asynchronous Logging:");
+        try {
+            LoggerBenchmark.run(200_000);
+            LoggerBenchmark.runBinary(200_000);
+        } catch (IOException e) {
+            System.out.println("Logger benchmark failed: " + e.getMessage());
+        }
+        
+        System.out.println("\n9. Eager vs Lazy Initialization:");
+        try {
+            // This JVM already built DatabaseConnection and AppConfig above, so each mode runs cold in its own
+            for (InitializationManager.Mode mode : InitializationManager.Mode.values()) {
+                InitializationManager.measureInFreshJvm(mode);
+            }
+        } catch (IOException e) {
+            System.out.println("Startup measurement failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        System.out.println("\n10. Scoped Instances:");
+        try {
+            ScopedInstanceRegistry<PooledConnection> connections = new ScopedInstanceRegistry<>(
+                    "connection", () -> new PooledConnection("jdbc:mysql://localhost:3306/tenants", 
+                                                             new SyntheticQueryBackend(Duration.ZERO, Duration.ZERO)), 
+                    PooledConnection::close, 2);
+            System.out.println("Global scope shared: " + (connections.global() == connections.global()));
+            connections.forTenant("acme");
+            connections.forTenant("globex");
+            connections.forTenant("acme");
+            connections.forTenant("initech"); // Evicts globex, the least recently used tenant
+            System.out.println("Tenants cached: " + connections.getTenantCount() + " (max 2), disposed: " + 
+                               connections.getDisposedCount());
+            
+            Thread scopedWorker = new Thread(() -> System.out.println("Worker thread connection #" + 
+                                                                     connections.forCurrentThread().getId()));
+            scopedWorker.start();
+            scopedWorker.join();
+            System.out.println("Abandoned scopes cleaned up: " + connections.cleanupAbandoned(Duration.ofMinutes(5)) + 
+                               ", thread scopes left: " + connections.getThreadScopeCount());
+            
+            ScopeContentionBenchmark.run(4, 200_000, 8);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        
+        System.out.println("\n11. Singleton Characteristics:");
         System.out.println("✓ Single instance per JVM");
         System.out.println("✓ Global access point");
         System.out.println("✓ Lazy initialization");
@@ -0,0 +1,22 @@
+package singleton.jmh;
+
+// DatabaseConnection's accessor: one volatile read once initialized
+final class DoubleCheckedSingleton {
+    private static volatile DoubleCheckedSingleton instance;
+    
+    private DoubleCheckedSingleton() {
+    }
+    
+    static DoubleCheckedSingleton getInstance() {
+        DoubleCheckedSingleton result = instance;
+        if (result == null) {
+            synchronized (DoubleCheckedSingleton.class) {
+                result = instance;
+                if (result == null) {
+                    instance = result = new DoubleCheckedSingleton();
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,6 @@
+package singleton.jmh;
+
+// Logger's idiom: the JVM creates the constant during class initialization
+enum EnumSingleton {
+    INSTANCE
+}
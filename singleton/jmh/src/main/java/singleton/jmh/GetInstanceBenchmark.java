@@ -0,0 +1,55 @@
+package singleton.jmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Steady-state cost of getInstance() for each idiom in SingletonDemo. Thread count comes from
+// the command line (-t 1, -t 2, -t max), so the same build measures both the uncontended path
+// and lock contention. Returned values go to JMH's implicit blackhole.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class GetInstanceBenchmark {
+    
+    // Builds every instance before measuring, so no iteration pays for initialization
+    @Setup(Level.Trial)
+    public void initialize() {
+        SynchronizedSingleton.getInstance();
+        DoubleCheckedSingleton.getInstance();
+        HolderSingleton.getInstance();
+    }
+    
+    @Benchmark
+    public Object synchronizedAccessor() {
+        return SynchronizedSingleton.getInstance();
+    }
+    
+    @Benchmark
+    public Object doubleChecked() {
+        return DoubleCheckedSingleton.getInstance();
+    }
+    
+    @Benchmark
+    public Object enumConstant() {
+        return EnumSingleton.INSTANCE;
+    }
+    
+    @Benchmark
+    public Object holder() {
+        return HolderSingleton.getInstance();
+    }
+}
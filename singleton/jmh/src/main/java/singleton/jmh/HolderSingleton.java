@@ -0,0 +1,15 @@
+package singleton.jmh;
+
+// AppConfig's current accessor: initialization-on-demand holder
+final class HolderSingleton {
+    private HolderSingleton() {
+    }
+    
+    private static final class Holder {
+        static final HolderSingleton INSTANCE = new HolderSingleton();
+    }
+    
+    static HolderSingleton getInstance() {
+        return Holder.INSTANCE;
+    }
+}
@@ -0,0 +1,16 @@
+package singleton.jmh;
+
+// The original AppConfig accessor: every call takes the class lock
+final class SynchronizedSingleton {
+    private static SynchronizedSingleton instance;
+    
+    private SynchronizedSingleton() {
+    }
+    
+    static synchronized SynchronizedSingleton getInstance() {
+        if (instance == null) {
+            instance = new SynchronizedSingleton();
+        }
+        return instance;
+    }
+}